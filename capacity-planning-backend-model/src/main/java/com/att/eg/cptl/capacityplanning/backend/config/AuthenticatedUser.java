@@ -0,0 +1,42 @@
+package com.att.eg.cptl.capacityplanning.backend.config;
+
+import com.att.eg.cptl.capacityplanning.backend.model.AppUser;
+import java.util.Collection;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+/**
+ * Spring Security principal which keeps the {@link AppUser} that was resolved while authenticating
+ * the request token, so that controllers don't have to look it up again.
+ */
+public class AuthenticatedUser extends User {
+  private static final long serialVersionUID = 1L;
+
+  private final AppUser appUser;
+
+  public AuthenticatedUser(AppUser appUser, Collection<? extends GrantedAuthority> authorities) {
+    super(
+        appUser.getUsername(),
+        appUser.getPassword() == null ? "null" : appUser.getPassword(),
+        true,
+        true,
+        true,
+        true,
+        authorities);
+    this.appUser = appUser;
+  }
+
+  public AppUser getAppUser() {
+    return appUser;
+  }
+
+  @Override
+  public boolean equals(Object rhs) {
+    return super.equals(rhs);
+  }
+
+  @Override
+  public int hashCode() {
+    return super.hashCode();
+  }
+}
@@ -3,7 +3,7 @@ package com.att.eg.cptl.capacityplanning.backend.config;
 import static java.util.Objects.requireNonNull;
 import static org.springframework.http.HttpStatus.FORBIDDEN;
 
-import com.att.eg.cptl.capacityplanning.backend.dao.SessionRepository;
+import com.att.eg.cptl.capacityplanning.backend.service.UserAuthenticationService;
 import java.util.ArrayList;
 import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -53,17 +53,17 @@ public abstract class BaseSecurityConfig extends WebSecurityConfigurerAdapter {
 
   protected TokenAuthenticationProvider provider;
 
-  protected SessionRepository sessionRepository;
+  protected UserAuthenticationService userAuthenticationService;
   protected Integer expirySeconds;
 
   @Autowired
   public BaseSecurityConfig(
       final TokenAuthenticationProvider provider,
-      @Autowired SessionRepository sessionRepository,
+      @Autowired UserAuthenticationService userAuthenticationService,
       @Value("${token.expirySeconds}") Integer expirySeconds) {
     super();
     this.provider = requireNonNull(provider);
-    this.sessionRepository = sessionRepository;
+    this.userAuthenticationService = userAuthenticationService;
     this.expirySeconds = expirySeconds;
   }
 
@@ -106,7 +106,7 @@ public abstract class BaseSecurityConfig extends WebSecurityConfigurerAdapter {
   @Bean
   public TokenAuthenticationFilter restAuthenticationFilter() throws Exception {
     final TokenAuthenticationFilter filter =
-        new TokenAuthenticationFilter(protectedUrls, sessionRepository, expirySeconds);
+        new TokenAuthenticationFilter(protectedUrls, userAuthenticationService, expirySeconds);
     filter.setAuthenticationManager(authenticationManager());
     filter.setAuthenticationSuccessHandler(successHandler());
     return filter;
@@ -2,14 +2,19 @@ package com.att.eg.cptl.capacityplanning.backend.config;
 
 import com.att.eg.cptl.capacityplanning.backend.converter.StringToZonedDateTimeConverter;
 import com.att.eg.cptl.capacityplanning.backend.converter.ZonedDateTimeToStringConverter;
+import com.att.eg.cptl.capacityplanning.backend.dao.ContentCodec;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.NodeType;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
@@ -29,6 +34,12 @@ public class CustomMongoConfiguration extends AbstractMongoConfiguration {
   @Value("${spring.data.mongodb.database}")
   private String database;
 
+  @Value("${content.codec.nodeTypes:FC_SHEET,SIMULATIONRESULT}")
+  private Set<NodeType> compressedNodeTypes;
+
+  @Value("${content.codec.minSize:65536}")
+  private int compressionMinSize;
+
   @Override
   protected String getDatabaseName() {
     return database;
@@ -43,6 +54,13 @@ public class CustomMongoConfiguration extends AbstractMongoConfiguration {
     return new CustomConversions(converters);
   }
 
+  /** Compresses large content of some node types, only if enabled. */
+  @Bean
+  @ConditionalOnProperty("content.codec.enabled")
+  public ContentCodec contentCodec(MeterRegistry meterRegistry) {
+    return new ContentCodec(compressedNodeTypes, compressionMinSize, meterRegistry);
+  }
+
   @Override
   public MongoClient mongoClient() {
     return new MongoClient(new MongoClientURI(uri));
@@ -3,7 +3,7 @@ package com.att.eg.cptl.capacityplanning.backend.config;
 import static java.util.Objects.requireNonNull;
 import static org.springframework.http.HttpStatus.FORBIDDEN;
 
-import com.att.eg.cptl.capacityplanning.backend.dao.SessionRepository;
+import com.att.eg.cptl.capacityplanning.backend.service.UserAuthenticationService;
 import java.util.ArrayList;
 import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -59,18 +59,18 @@ public abstract class LdapBaseSecurityConfig extends WebSecurityConfigurerAdapte
   private final Environment env;
   protected TokenAuthenticationProvider provider;
 
-  protected SessionRepository sessionRepository;
+  protected UserAuthenticationService userAuthenticationService;
   protected Integer expirySeconds;
 
   @Autowired
   public LdapBaseSecurityConfig(
       final TokenAuthenticationProvider provider,
-      @Autowired SessionRepository sessionRepository,
+      @Autowired UserAuthenticationService userAuthenticationService,
       @Value("${token.expirySeconds}") Integer expirySeconds,
       @Autowired Environment env) {
     super();
     this.provider = requireNonNull(provider);
-    this.sessionRepository = sessionRepository;
+    this.userAuthenticationService = userAuthenticationService;
     this.expirySeconds = expirySeconds;
     this.env = env;
   }
@@ -162,7 +162,7 @@ public abstract class LdapBaseSecurityConfig extends WebSecurityConfigurerAdapte
   @Bean
   public TokenAuthenticationFilter restAuthenticationFilter() throws Exception {
     final TokenAuthenticationFilter filter =
-        new TokenAuthenticationFilter(protectedUrls, sessionRepository, expirySeconds);
+        new TokenAuthenticationFilter(protectedUrls, userAuthenticationService, expirySeconds);
     filter.setAuthenticationManager(authenticationManager());
     filter.setAuthenticationSuccessHandler(successHandler());
     return filter;
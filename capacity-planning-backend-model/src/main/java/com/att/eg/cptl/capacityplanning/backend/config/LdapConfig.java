@@ -2,7 +2,7 @@ package com.att.eg.cptl.capacityplanning.backend.config;
 
 import static lombok.AccessLevel.PRIVATE;
 
-import com.att.eg.cptl.capacityplanning.backend.dao.SessionRepository;
+import com.att.eg.cptl.capacityplanning.backend.service.UserAuthenticationService;
 import java.util.ArrayList;
 import java.util.List;
 import lombok.experimental.FieldDefaults;
@@ -58,10 +58,10 @@ public class LdapConfig extends LdapBaseSecurityConfig {
   @Autowired
   public LdapConfig(
       TokenAuthenticationProvider provider,
-      @Autowired SessionRepository sessionRepository,
+      @Autowired UserAuthenticationService userAuthenticationService,
       @Value("${token.expirySeconds}") Integer expirySeconds,
       @Autowired Environment env) {
-    super(provider, sessionRepository, expirySeconds, env);
+    super(provider, userAuthenticationService, expirySeconds, env);
   }
 
   @Override
@@ -99,7 +99,7 @@ public class LdapConfig extends LdapBaseSecurityConfig {
   @Bean
   public TokenAuthenticationFilter restAuthenticationFilter() throws Exception {
     final TokenAuthenticationFilter filter =
-        new TokenAuthenticationFilter(protectedUrls, sessionRepository, expirySeconds);
+        new TokenAuthenticationFilter(protectedUrls, userAuthenticationService, expirySeconds);
     filter.setAuthenticationManager(authenticationManager());
     filter.setAuthenticationSuccessHandler(successHandler());
     return filter;
@@ -0,0 +1,258 @@
+package com.att.eg.cptl.capacityplanning.backend.config;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import com.att.eg.cptl.capacityplanning.backend.dao.ContentStore;
+import com.att.eg.cptl.capacityplanning.backend.jobs.TreeNodeParentIdBackfill;
+import com.att.eg.cptl.capacityplanning.backend.model.UserGroup;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.ContentBlob;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.DependencyEdge;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNode;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNodeLog;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import javax.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the indexes the hot queries on treeNode, treeNodeLog, contentBlob, dependencyEdge and
+ * userGroup rely on. Creation is idempotent, so this runs on every startup. Afterwards a set of
+ * representative query shapes is explained and every shape which would end up in a collection scan
+ * is reported. Depending on {@code mongo.indexes.verify} that's logged ({@code log}), aborts the
+ * startup ({@code fail}) or is skipped altogether ({@code off}). The unique index on the names of
+ * siblings is the only check for duplicate names, so the startup always fails without it.
+ */
+@Component
+public class MongoIndexProvisioner {
+  private static final Logger LOGGER = LogManager.getLogger(MongoIndexProvisioner.class);
+
+  @Autowired private MongoOperations mongoOperations;
+
+  @Autowired private TreeNodeParentIdBackfill treeNodeParentIdBackfill;
+
+  @Value("${mongo.indexes.create:true}")
+  private boolean createIndexes;
+
+  @Value("${mongo.indexes.verify:log}")
+  private String verify;
+
+  @PostConstruct
+  public void init() {
+    if (createIndexes) {
+      ensureIndexes();
+    }
+    // the backfill relies on the unique index on the names of siblings to leave out nodes which
+    // clash with a sibling, so it runs once the index is there
+    treeNodeParentIdBackfill.run();
+    verifyUniqueNameIndex();
+    if (!"off".equalsIgnoreCase(verify)) {
+      List<String> collectionScans = findCollectionScans();
+      if (!collectionScans.isEmpty()) {
+        String message = "queries resulting in a collection scan: " + collectionScans;
+        if ("fail".equalsIgnoreCase(verify)) {
+          throw new IllegalStateException(message);
+        }
+        LOGGER.warn(message);
+      }
+    }
+  }
+
+  private void ensureIndexes() {
+    // children, subtrees and trash are looked up by ancestor
+    ensureIndex(TreeNode.class, new Index().on("ancestors", Sort.Direction.ASC));
+    // tracking info of all models/sheets, optionally only the recently modified ones
+    ensureIndex(
+        TreeNode.class,
+        new Index()
+            .on("type", Sort.Direction.ASC)
+            .on("trashed", Sort.Direction.ASC)
+            .on("lastModifiedDate", Sort.Direction.ASC));
+    // names are unique among the children of a node which aren't trashed. nodes without a parent
+    // id yet are left out until it's filled in
+    Criteria uniqueNameFilter =
+        where("parentId").type(JsonSchemaObject.Type.STRING).and("trashed").is(false);
+    ensureIndex(
+        TreeNode.class,
+        new Index()
+            .on("parentId", Sort.Direction.ASC)
+            .on("name", Sort.Direction.ASC)
+            .unique()
+            .partial(PartialIndexFilter.of(uniqueNameFilter)));
+
+    // releases and versions of a node, newest first
+    ensureIndex(
+        TreeNodeLog.class,
+        new Index().on("baseNodeId", Sort.Direction.ASC).on("releaseNr", Sort.Direction.DESC));
+    ensureIndex(
+        TreeNodeLog.class,
+        new Index().on("baseNodeId", Sort.Direction.ASC).on("version", Sort.Direction.DESC));
+
+    // hashes still referenced, for the sweep of content blobs and files
+    for (String field : ContentStore.STORAGE_FIELDS) {
+      ensureIndex(TreeNode.class, new Index().on(field, Sort.Direction.ASC).sparse());
+      ensureIndex(TreeNodeLog.class, new Index().on(field, Sort.Direction.ASC).sparse());
+    }
+    // blobs which haven't been referenced for a while
+    ensureIndex(ContentBlob.class, new Index().on("lastReferenced", Sort.Direction.ASC));
+
+    // dependents and dependencies of a node
+    ensureIndex(DependencyEdge.class, new Index().on("dependencyId", Sort.Direction.ASC));
+    ensureIndex(
+        DependencyEdge.class,
+        new Index()
+            .on("dependentId", Sort.Direction.ASC)
+            .on("dependentReleaseNr", Sort.Direction.ASC));
+
+    // group memberships of a user
+    ensureIndex(UserGroup.class, new Index().on("users", Sort.Direction.ASC));
+  }
+
+  private void verifyUniqueNameIndex() {
+    boolean exists =
+        mongoOperations
+            .indexOps(TreeNode.class)
+            .getIndexInfo()
+            .stream()
+            .anyMatch(
+                index ->
+                    index.isUnique() && index.isIndexForFields(Arrays.asList("parentId", "name")));
+    if (!exists) {
+      throw new IllegalStateException(
+          "the unique index on parentId and name of "
+              + mongoOperations.getCollectionName(TreeNode.class)
+              + " is missing, the names of siblings wouldn't be kept unique");
+    }
+  }
+
+  private void ensureIndex(Class<?> entityClass, Index index) {
+    try {
+      mongoOperations.indexOps(entityClass).ensureIndex(index);
+    } catch (DataAccessException e) {
+      // e.g. an index on the same keys exists under a different name
+      LOGGER.warn(
+          "could not create index "
+              + index.getIndexKeys().toJson()
+              + " on "
+              + mongoOperations.getCollectionName(entityClass),
+          e);
+    }
+  }
+
+  /**
+   * Explains the representative query shapes.
+   *
+   * @return Descriptions of the shapes whose winning plan contains a collection scan.
+   */
+  private List<String> findCollectionScans() {
+    String treeNode = mongoOperations.getCollectionName(TreeNode.class);
+    String treeNodeLog = mongoOperations.getCollectionName(TreeNodeLog.class);
+    String userGroup = mongoOperations.getCollectionName(UserGroup.class);
+    String dependencyEdge = mongoOperations.getCollectionName(DependencyEdge.class);
+    Document notTrashed = new Document("trashed", new Document("$ne", true));
+    Document isRelease = new Document("releaseNr", new Document("$exists", true));
+    Document isVersion = new Document("releaseNr", new Document("$exists", false));
+
+    List<String> collectionScans = new ArrayList<>();
+    checkQuery(
+        collectionScans,
+        treeNode,
+        and(
+            new Document("ancestors", "root"),
+            new Document("ancestors", new Document("$size", 1)),
+            notTrashed),
+        null);
+    checkQuery(
+        collectionScans,
+        treeNode,
+        and(
+            new Document("type", new Document("$in", Arrays.asList("MODEL", "FC_SHEET"))),
+            notTrashed,
+            new Document("lastModifiedDate", new Document("$gt", new Date(0)))),
+        null);
+    checkQuery(
+        collectionScans,
+        treeNode,
+        new Document("parentId", "").append("name", "").append("trashed", false),
+        null);
+    checkQuery(
+        collectionScans,
+        treeNodeLog,
+        and(new Document("baseNodeId", ""), isRelease),
+        new Document("releaseNr", -1));
+    checkQuery(
+        collectionScans,
+        treeNodeLog,
+        and(new Document("baseNodeId", ""), isVersion),
+        new Document("version", -1));
+    checkQuery(
+        collectionScans,
+        treeNodeLog,
+        and(new Document("baseNodeId", ""), new Document("version", 0L), isVersion),
+        null);
+    checkQuery(
+        collectionScans,
+        dependencyEdge,
+        new Document("dependencyId", new Document("$in", Arrays.asList(""))),
+        null);
+    checkQuery(
+        collectionScans,
+        dependencyEdge,
+        new Document("dependentId", "").append("dependentReleaseNr", null),
+        null);
+    checkQuery(collectionScans, userGroup, new Document("users", ""), null);
+    return collectionScans;
+  }
+
+  private Document and(Document... conditions) {
+    return new Document("$and", Arrays.asList(conditions));
+  }
+
+  private void checkQuery(
+      List<String> collectionScans, String collection, Document filter, @Nullable Document sort) {
+    Document find = new Document("find", collection).append("filter", filter);
+    if (sort != null) {
+      find.append("sort", sort);
+    }
+    try {
+      Document explanation =
+          mongoOperations.executeCommand(
+              new Document("explain", find).append("verbosity", "queryPlanner"));
+      Object queryPlanner = explanation.get("queryPlanner");
+      if (queryPlanner instanceof Document
+          && containsCollectionScan(((Document) queryPlanner).get("winningPlan"))) {
+        collectionScans.add(collection + " " + filter.toJson());
+      }
+    } catch (DataAccessException e) {
+      LOGGER.warn("could not explain query on " + collection + ": " + filter.toJson(), e);
+    }
+  }
+
+  private boolean containsCollectionScan(Object plan) {
+    if (plan instanceof Document) {
+      Document stage = (Document) plan;
+      if ("COLLSCAN".equals(stage.get("stage"))) {
+        return true;
+      }
+      return stage.values().stream().anyMatch(this::containsCollectionScan);
+    }
+    if (plan instanceof List) {
+      return ((List<?>) plan).stream().anyMatch(this::containsCollectionScan);
+    }
+    return false;
+  }
+}
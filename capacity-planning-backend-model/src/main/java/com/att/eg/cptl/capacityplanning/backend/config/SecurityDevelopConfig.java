@@ -2,7 +2,7 @@ package com.att.eg.cptl.capacityplanning.backend.config;
 
 import static lombok.AccessLevel.PRIVATE;
 
-import com.att.eg.cptl.capacityplanning.backend.dao.SessionRepository;
+import com.att.eg.cptl.capacityplanning.backend.service.UserAuthenticationService;
 import lombok.experimental.FieldDefaults;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -29,9 +29,9 @@ public class SecurityDevelopConfig extends BaseSecurityConfig {
   @Autowired
   public SecurityDevelopConfig(
       TokenAuthenticationProvider provider,
-      @Autowired SessionRepository sessionRepository,
+      @Autowired UserAuthenticationService userAuthenticationService,
       @Value("${token.expirySeconds}") Integer expirySeconds) {
-    super(provider, sessionRepository, expirySeconds);
+    super(provider, userAuthenticationService, expirySeconds);
   }
 
   @Bean
@@ -4,8 +4,8 @@ import static java.util.Optional.ofNullable;
 import static lombok.AccessLevel.PRIVATE;
 import static org.apache.commons.lang3.StringUtils.removeStart;
 
-import com.att.eg.cptl.capacityplanning.backend.dao.SessionRepository;
 import com.att.eg.cptl.capacityplanning.backend.model.Session;
+import com.att.eg.cptl.capacityplanning.backend.service.UserAuthenticationService;
 import com.att.eg.cptl.capacityplanning.backend.util.Constants;
 import com.att.eg.cptl.capacityplanning.backend.util.SessionUtils;
 import java.io.IOException;
@@ -25,16 +25,16 @@ import org.springframework.security.web.util.matcher.RequestMatcher;
 @FieldDefaults(level = PRIVATE, makeFinal = true)
 public final class TokenAuthenticationFilter extends AbstractAuthenticationProcessingFilter {
 
-  private final SessionRepository sessionRepository;
+  private final UserAuthenticationService userAuthenticationService;
 
   private final int expirySeconds;
 
   public TokenAuthenticationFilter(
       final RequestMatcher requiresAuth,
-      final SessionRepository sessionRepository,
+      final UserAuthenticationService userAuthenticationService,
       int expirySeconds) {
     super(requiresAuth);
-    this.sessionRepository = sessionRepository;
+    this.userAuthenticationService = userAuthenticationService;
     this.expirySeconds = expirySeconds;
   }
 
@@ -50,7 +50,7 @@ public final class TokenAuthenticationFilter extends AbstractAuthenticationProce
             .map(String::trim)
             .orElseThrow(() -> new BadCredentialsException("Missing Authentication Token"));
 
-    Session session = sessionRepository.findById(token).get();
+    Session session = userAuthenticationService.findSessionByToken(token).orElse(null);
 
     if (session == null || session.getIssueTime() == null) {
       throw new SessionAuthenticationException("Invalid token");
@@ -60,7 +60,9 @@ public final class TokenAuthenticationFilter extends AbstractAuthenticationProce
       throw new CredentialsExpiredException("Token has expired.");
     }
 
-    final Authentication auth = new UsernamePasswordAuthenticationToken(token, token);
+    final UsernamePasswordAuthenticationToken auth =
+        new UsernamePasswordAuthenticationToken(token, token);
+    auth.setDetails(session);
     return getAuthenticationManager().authenticate(auth);
   }
 
@@ -1,6 +1,7 @@
 package com.att.eg.cptl.capacityplanning.backend.config;
 
 import com.att.eg.cptl.capacityplanning.backend.model.AppUser;
+import com.att.eg.cptl.capacityplanning.backend.model.Session;
 import com.att.eg.cptl.capacityplanning.backend.service.UserAuthenticationService;
 import java.util.Collections;
 import java.util.Optional;
@@ -9,7 +10,6 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.authentication.dao.AbstractUserDetailsAuthenticationProvider;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Component;
@@ -28,7 +28,11 @@ public final class TokenAuthenticationProvider extends AbstractUserDetailsAuthen
   protected UserDetails retrieveUser(
       final String username, final UsernamePasswordAuthenticationToken authentication) {
     final Object token = authentication.getCredentials();
-    Optional<AppUser> appUserOptional = userAuthenticationService.findUserByToken((String) token);
+    // the filter has already loaded the session, don't read it a second time
+    Optional<AppUser> appUserOptional =
+        authentication.getDetails() instanceof Session
+            ? userAuthenticationService.findUserBySession((Session) authentication.getDetails())
+            : userAuthenticationService.findUserByToken((String) token);
     if (!appUserOptional.isPresent()) {
       throw new UsernameNotFoundException("Cannot find user with authentication token=" + token);
     }
@@ -40,13 +44,8 @@ public final class TokenAuthenticationProvider extends AbstractUserDetailsAuthen
     if (appUser.getRole() != null) {
       userAuthority = new SimpleGrantedAuthority("ROLE_" + appUser.getRole().toString());
     }
-    return new User(
-        appUser.getUsername(),
-        appUser.getPassword() == null ? "null" : appUser.getPassword(),
-        true,
-        true,
-        true,
-        true,
+    return new AuthenticatedUser(
+        appUser,
         userAuthority == null ? Collections.emptyList() : Collections.singletonList(userAuthority));
   }
 }
@@ -4,6 +4,7 @@ import com.att.eg.cptl.capacityplanning.backend.exception.*;
 import com.att.eg.cptl.capacityplanning.backend.rest.RestResponse;
 import java.io.IOException;
 import javax.servlet.http.HttpServletResponse;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -45,7 +46,7 @@ public class CptExceptionHandler {
   }
 
   @SuppressWarnings("rawtypes")
-  @ExceptionHandler(VersionConflictException.class)
+  @ExceptionHandler({VersionConflictException.class, OptimisticLockingFailureException.class})
   public ResponseEntity<RestResponse> handleVersionConflictException(
       HttpServletResponse response, RuntimeException e) throws IOException {
     RestResponse restResponse = new RestResponse(HttpStatus.CONFLICT, e.getMessage());
@@ -87,8 +88,11 @@ public class CptExceptionHandler {
   @SuppressWarnings("rawtypes")
   @ExceptionHandler(FailedDependencyException.class)
   public ResponseEntity<RestResponse> handleFailedDependencyException(
-      HttpServletResponse response, RuntimeException e) throws IOException {
+      HttpServletResponse response, FailedDependencyException e) throws IOException {
     RestResponse restResponse = new RestResponse(HttpStatus.FAILED_DEPENDENCY, e.getMessage());
+    if (!e.getBlockingDependents().isEmpty()) {
+      restResponse.setData(e.getBlockingDependents());
+    }
     return new ResponseEntity<>(restResponse, HttpStatus.FAILED_DEPENDENCY);
   }
 }
@@ -1,7 +1,5 @@
 package com.att.eg.cptl.capacityplanning.backend.controller;
 
-import static com.att.eg.cptl.capacityplanning.backend.util.IncomingRequestUtils.getTokenFromRequest;
-
 import com.att.eg.cptl.capacityplanning.backend.controller.util.RestResponseUtil;
 import com.att.eg.cptl.capacityplanning.backend.model.AppUser;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.NodeType;
@@ -37,8 +35,7 @@ public class NodeTrackingController {
       @RequestParam(value = "nodeType", required = false) NodeType nodeType,
       @RequestParam(value = "since", required = false) Long updatedAfterTime,
       @RequestParam(value = "id", required = false) List<String> nodeIds) {
-    String token = getTokenFromRequest(request);
-    Optional<AppUser> optionalUser = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> optionalUser = userAuthenticationService.getAuthenticatedUser();
     if (!optionalUser.isPresent()) {
       return RestResponseUtil.createResponse(HttpStatus.UNAUTHORIZED);
     }
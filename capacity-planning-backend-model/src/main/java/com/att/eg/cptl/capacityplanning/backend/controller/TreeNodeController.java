@@ -1,7 +1,5 @@
 package com.att.eg.cptl.capacityplanning.backend.controller;
 
-import static com.att.eg.cptl.capacityplanning.backend.util.IncomingRequestUtils.getTokenFromRequest;
-
 import com.att.eg.cptl.capacityplanning.backend.controller.history.NodeHistoryFilterType;
 import com.att.eg.cptl.capacityplanning.backend.controller.util.RestResponseUtil;
 import com.att.eg.cptl.capacityplanning.backend.dto.treenode.TreeNodeDto;
@@ -14,13 +12,21 @@ import com.att.eg.cptl.capacityplanning.backend.model.treenode.NodeType;
 import com.att.eg.cptl.capacityplanning.backend.rest.RestResponse;
 import com.att.eg.cptl.capacityplanning.backend.service.TreeNodeService;
 import com.att.eg.cptl.capacityplanning.backend.service.UserAuthenticationService;
-import com.att.eg.cptl.capacityplanning.backend.util.IncomingRequestUtils;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.micrometer.core.annotation.Timed;
 import java.util.*;
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -34,6 +40,7 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 /**
  * Controller for interacting with treenode structure, containing folders and nodes (models,
@@ -47,33 +54,119 @@ public class TreeNodeController {
 
   @Autowired private UserAuthenticationService userAuthenticationService;
 
+  @Autowired private ObjectMapper objectMapper;
+
+  @Value("${treenode.contentCache.maxBytes:67108864}")
+  private long contentCacheMaxBytes;
+
+  // content as sent, by its entity tag, so ranges of it are served without reading it again
+  private Cache<String, byte[]> contentCache;
+
+  @PostConstruct
+  public void init() {
+    contentCache =
+        CacheBuilder.newBuilder()
+            .maximumWeight(contentCacheMaxBytes)
+            .<String, byte[]>weigher((eTag, content) -> content.length)
+            .build();
+  }
+
+  /**
+   * Get a node, optionally with its children. A node on its own is tagged, so clients can ask for
+   * it only if it has changed, releases and versions as well, since they are sent with the
+   * current ancestors of the node.
+   */
   @GetMapping("/tree/{nodeId}")
   @PreAuthorize("hasAnyRole('ROLE_ADMIN','ROLE_READ_ONLY','ROLE_READ_AND_WRITE')")
   public ResponseEntity<RestResponse> getNode(
-      HttpServletRequest request,
+      ServletWebRequest request,
       @PathVariable("nodeId") String nodeId,
       @RequestParam(value = "trashed", defaultValue = "false") Boolean showTrash,
       @RequestParam(value = "withChildren", defaultValue = "false") Boolean showChildren,
       @RequestParam(value = "sparse", defaultValue = "true") Boolean sparse,
       @RequestParam(value = "sparseChildren", defaultValue = "true") Boolean sparseChildren) {
-    String token = getTokenFromRequest(request);
-    Optional<AppUser> optionalUser = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> optionalUser = userAuthenticationService.getAuthenticatedUser();
     if (!optionalUser.isPresent()) {
       return RestResponseUtil.createResponse(HttpStatus.UNAUTHORIZED);
     }
     AppUser user = optionalUser.get();
 
-    return RestResponseUtil.createResponse(
-        HttpStatus.OK,
-        treeNodeService.getNode(nodeId, showTrash, sparse, showChildren, sparseChildren, user));
+    // children may change without the node changing, so only the node on its own is tagged
+    String eTag =
+        showChildren ? null : treeNodeService.getNodeETag(nodeId, showTrash, sparse, user);
+    if (eTag == null) {
+      return RestResponseUtil.createResponse(
+          HttpStatus.OK,
+          treeNodeService.getNode(nodeId, showTrash, sparse, showChildren, sparseChildren, user));
+    }
+    // releases and versions are sent with the current ancestors of the node, which may change
+    CacheControl cacheControl = CacheControl.noCache().cachePrivate();
+    if (request.checkNotModified(eTag)) {
+      // answered with 304 and the tag already
+      request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+      return null;
+    }
+    RestResponse restResponse =
+        new RestResponse(
+            HttpStatus.OK,
+            treeNodeService.getNode(nodeId, showTrash, sparse, false, sparseChildren, user));
+    return ResponseEntity.ok().eTag(eTag).cacheControl(cacheControl).body(restResponse);
+  }
+
+  /**
+   * Get only the content of a node, as JSON. Range requests are supported, so clients can fetch
+   * large content in pieces. The content is tagged with the version of the node, or with the
+   * stored release or version, so clients can make sure with If-Range that all pieces are of the
+   * same version.
+   */
+  @GetMapping(value = "/tree/{nodeId}/content", produces = MediaType.APPLICATION_JSON_VALUE)
+  @PreAuthorize("hasAnyRole('ROLE_ADMIN','ROLE_READ_ONLY','ROLE_READ_AND_WRITE')")
+  public ResponseEntity<?> getNodeContent(
+      ServletWebRequest request, @PathVariable("nodeId") String nodeId)
+      throws JsonProcessingException {
+    Optional<AppUser> optionalUser = userAuthenticationService.getAuthenticatedUser();
+    if (!optionalUser.isPresent()) {
+      return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+    }
+    AppUser user = optionalUser.get();
+
+    String eTag = treeNodeService.getNodeContentETag(nodeId, user);
+    // releases and versions can be renamed or removed, so the tag is checked every time
+    CacheControl cacheControl = CacheControl.noCache().cachePrivate();
+    if (eTag != null && request.checkNotModified(eTag)) {
+      // answered with 304 and the tag already
+      request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+      return null;
+    }
+    byte[] content = eTag != null ? contentCache.getIfPresent(eTag) : null;
+    if (content == null) {
+      TreeNodeDto node = treeNodeService.getNode(nodeId, false, false, false, true, user).get(0);
+      content = objectMapper.writeValueAsBytes(node.getContent());
+      // the content is only of the tagged version if the node didn't change while it was read
+      if (eTag == null || !eTag.equals(treeNodeService.getNodeContentETag(nodeId, user))) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(content);
+      }
+      contentCache.put(eTag, content);
+    }
+    ResponseEntity.BodyBuilder response =
+        ResponseEntity.ok()
+            .eTag(eTag)
+            .cacheControl(cacheControl)
+            .contentType(MediaType.APPLICATION_JSON);
+    String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+    if (ifRange != null && !ifRange.equals(eTag)) {
+      // ranges of another version, the whole content is sent instead
+      return response.body(content);
+    }
+    // ranges of a resource body are served as partial content by Spring MVC
+    return response.body(new ByteArrayResource(content));
   }
 
   @GetMapping("/tree/{nodeId}/trashed")
   @PreAuthorize("hasAnyRole('ROLE_ADMIN','ROLE_READ_AND_WRITE')")
   public ResponseEntity<RestResponse> getTrashedNodes(
       HttpServletRequest request, @PathVariable("nodeId") String nodeId) {
-    String token = getTokenFromRequest(request);
-    Optional<AppUser> optionalUser = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> optionalUser = userAuthenticationService.getAuthenticatedUser();
     if (!optionalUser.isPresent()) {
       return RestResponseUtil.createResponse(HttpStatus.UNAUTHORIZED);
     }
@@ -90,8 +183,7 @@ public class TreeNodeController {
       @PathVariable("nodeId") String nodeId,
       @RequestParam(value = "v", required = false) Long versionToDelete,
       @RequestParam(value = "remove", defaultValue = "false") Boolean remove) {
-    String token = getTokenFromRequest(request);
-    Optional<AppUser> optionalUser = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> optionalUser = userAuthenticationService.getAuthenticatedUser();
     if (!optionalUser.isPresent()) {
       return RestResponseUtil.createResponse(HttpStatus.UNAUTHORIZED);
     }
@@ -107,23 +199,22 @@ public class TreeNodeController {
       HttpServletRequest request,
       @PathVariable("nodeId") String nodeId,
       @RequestParam(value = "v", required = false) Long versionToDelete) {
-    String token = getTokenFromRequest(request);
-    Optional<AppUser> optionalUser = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> optionalUser = userAuthenticationService.getAuthenticatedUser();
     if (!optionalUser.isPresent()) {
       return RestResponseUtil.createResponse(HttpStatus.UNAUTHORIZED);
     }
     AppUser user = optionalUser.get();
 
-    treeNodeService.restoreNodeFromTrash(nodeId, versionToDelete, user);
-    return RestResponseUtil.createResponse(HttpStatus.OK);
+    List<String> nodeIdsRestored =
+        treeNodeService.restoreNodeFromTrash(nodeId, versionToDelete, user);
+    return RestResponseUtil.createResponse(HttpStatus.OK, nodeIdsRestored);
   }
 
   @PostMapping("/tree")
   @PreAuthorize("hasAnyRole('ROLE_ADMIN','ROLE_READ_AND_WRITE')")
   public ResponseEntity<RestResponse> createNode(
       HttpServletRequest request, @RequestBody TreeNodeDto treeNodeDto) {
-    String token = getTokenFromRequest(request);
-    Optional<AppUser> optionalUser = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> optionalUser = userAuthenticationService.getAuthenticatedUser();
     if (!optionalUser.isPresent()) {
       return RestResponseUtil.createResponse(HttpStatus.UNAUTHORIZED);
     }
@@ -141,8 +232,7 @@ public class TreeNodeController {
       @RequestBody TreeNodeDto treeNodeDto,
       @RequestParam(value = "v", required = false) Long versionToSave,
       @RequestParam(value = "sparse", defaultValue = "false") Boolean sparse) {
-    String token = getTokenFromRequest(request);
-    Optional<AppUser> optionalUser = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> optionalUser = userAuthenticationService.getAuthenticatedUser();
     if (!optionalUser.isPresent()) {
       return RestResponseUtil.createResponse(HttpStatus.UNAUTHORIZED);
     }
@@ -180,8 +270,7 @@ public class TreeNodeController {
             }
           });
     }
-    String token = getTokenFromRequest(request);
-    Optional<AppUser> optionalUser = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> optionalUser = userAuthenticationService.getAuthenticatedUser();
     if (!optionalUser.isPresent()) {
       return RestResponseUtil.createResponse(HttpStatus.UNAUTHORIZED);
     }
@@ -203,8 +292,7 @@ public class TreeNodeController {
       @PathVariable("nodeId") String nodeId,
       @RequestParam("version") Long versionId,
       @RequestBody Map<String, String> descriptionBody) {
-    String token = getTokenFromRequest(request);
-    Optional<AppUser> optionalUser = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> optionalUser = userAuthenticationService.getAuthenticatedUser();
     if (!optionalUser.isPresent()) {
       return RestResponseUtil.createResponse(HttpStatus.UNAUTHORIZED);
     }
@@ -221,9 +309,7 @@ public class TreeNodeController {
       HttpServletRequest request,
       @PathVariable("nodeId") String nodeId,
       @RequestParam("version") Long versionId) {
-    final String token = IncomingRequestUtils.getTokenFromRequest(request);
-
-    Optional<AppUser> optionalUser = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> optionalUser = userAuthenticationService.getAuthenticatedUser();
     if (!optionalUser.isPresent()) {
       return RestResponseUtil.createResponse(HttpStatus.UNAUTHORIZED);
     }
@@ -242,9 +328,7 @@ public class TreeNodeController {
       @RequestBody TreeNodeContentPatch treeNodeContentPatch,
       @RequestParam(value = "v", required = false) Long versionId,
       @RequestParam(value = "description", required = false) String description) {
-    final String token = IncomingRequestUtils.getTokenFromRequest(request);
-
-    Optional<AppUser> optionalUser = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> optionalUser = userAuthenticationService.getAuthenticatedUser();
     if (!optionalUser.isPresent()) {
       return RestResponseUtil.createResponse(HttpStatus.UNAUTHORIZED);
     }
@@ -262,17 +346,15 @@ public class TreeNodeController {
       @PathVariable("nodeId") String nodeId,
       @RequestParam(value = "v") Long versionId,
       @RequestParam(value = "parentId") String parentId) {
-    final String token = IncomingRequestUtils.getTokenFromRequest(request);
-
-    Optional<AppUser> optionalUser = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> optionalUser = userAuthenticationService.getAuthenticatedUser();
     if (!optionalUser.isPresent()) {
       return RestResponseUtil.createResponse(HttpStatus.UNAUTHORIZED);
     }
     AppUser user = optionalUser.get();
 
-    treeNodeService.moveNode(nodeId, versionId, parentId, user);
+    long movedNodes = treeNodeService.moveNode(nodeId, versionId, parentId, user);
 
-    return RestResponseUtil.createResponse(HttpStatus.OK);
+    return RestResponseUtil.createResponse(HttpStatus.OK, movedNodes);
   }
 
   @PostMapping(value = "/tree/{nodeId}/copyNode", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -283,9 +365,7 @@ public class TreeNodeController {
       @RequestParam(value = "v") Long versionId,
       @RequestParam(value = "parentId") String parentId,
       @RequestParam(value = "name", required = false) String newName) {
-    final String token = IncomingRequestUtils.getTokenFromRequest(request);
-
-    Optional<AppUser> optionalUser = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> optionalUser = userAuthenticationService.getAuthenticatedUser();
     if (!optionalUser.isPresent()) {
       return RestResponseUtil.createResponse(HttpStatus.UNAUTHORIZED);
     }
@@ -301,9 +381,7 @@ public class TreeNodeController {
       HttpServletRequest request,
       @PathVariable("folderId") String folderId,
       @RequestParam(value = "name", required = false) String newName) {
-    final String token = IncomingRequestUtils.getTokenFromRequest(request);
-
-    Optional<AppUser> optionalUser = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> optionalUser = userAuthenticationService.getAuthenticatedUser();
     if (!optionalUser.isPresent()) {
       return RestResponseUtil.createResponse(HttpStatus.UNAUTHORIZED);
     }
@@ -323,8 +401,7 @@ public class TreeNodeController {
       @RequestParam(value = "siblingReference", required = false) String siblingRef,
       @RequestParam(value = "nodeType", required = false, defaultValue = "FOLDER")
           List<NodeType> nodeTypes) {
-    String token = getTokenFromRequest(request);
-    Optional<AppUser> optionalUser = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> optionalUser = userAuthenticationService.getAuthenticatedUser();
     if (!optionalUser.isPresent()) {
       return RestResponseUtil.createResponse(HttpStatus.UNAUTHORIZED);
     }
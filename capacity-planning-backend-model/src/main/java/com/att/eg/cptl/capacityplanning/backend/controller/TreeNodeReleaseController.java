@@ -1,7 +1,5 @@
 package com.att.eg.cptl.capacityplanning.backend.controller;
 
-import static com.att.eg.cptl.capacityplanning.backend.util.IncomingRequestUtils.getTokenFromRequest;
-
 import com.att.eg.cptl.capacityplanning.backend.controller.util.RestResponseUtil;
 import com.att.eg.cptl.capacityplanning.backend.dto.treenode.TreeNodeReleaseDto;
 import com.att.eg.cptl.capacityplanning.backend.exception.UnauthorizedException;
@@ -27,8 +25,7 @@ public class TreeNodeReleaseController {
   @Autowired private UserAuthenticationService userAuthenticationService;
 
   private AppUser getUser(HttpServletRequest request) {
-    String token = getTokenFromRequest(request);
-    Optional<AppUser> optionalUser = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> optionalUser = userAuthenticationService.getAuthenticatedUser();
     if (!optionalUser.isPresent()) {
       throw new UnauthorizedException("USER IS NOT AUTHORIZED");
     }
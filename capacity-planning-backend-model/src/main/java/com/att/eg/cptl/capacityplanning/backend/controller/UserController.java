@@ -1,7 +1,5 @@
 package com.att.eg.cptl.capacityplanning.backend.controller;
 
-import static com.att.eg.cptl.capacityplanning.backend.util.IncomingRequestUtils.getTokenFromRequest;
-
 import com.att.eg.cptl.capacityplanning.backend.controller.util.RestResponseUtil;
 import com.att.eg.cptl.capacityplanning.backend.dto.AppUserDto;
 import com.att.eg.cptl.capacityplanning.backend.dto.AppUserInputDto;
@@ -51,6 +49,13 @@ public class UserController {
     return RestResponseUtil.createResponse(HttpStatus.OK, userService.loginUser(loginInputDto));
   }
 
+  @PreAuthorize("hasAnyRole('ROLE_ADMIN','ROLE_READ_ONLY','ROLE_READ_AND_WRITE')")
+  @PostMapping(value = "/logout", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<RestResponse> logoutUser(HttpServletRequest request) {
+    userService.logoutUser(MiscUtil.getTokenFromRequest(request));
+    return RestResponseUtil.createResponse(HttpStatus.OK);
+  }
+
   @PreAuthorize("hasAnyRole('ROLE_ADMIN','ROLE_READ_ONLY','ROLE_READ_AND_WRITE')")
   @GetMapping(value = "/user/{userId}", produces = MediaType.APPLICATION_JSON_VALUE)
   public RestResponse getUser(@PathVariable("userId") String userId) {
@@ -97,8 +102,7 @@ public class UserController {
   @DeleteMapping(value = "/user/{userId}", produces = MediaType.APPLICATION_JSON_VALUE)
   public ResponseEntity<RestResponse> deleteUser(
       HttpServletRequest request, @PathVariable("userId") String userId) {
-    String token = getTokenFromRequest(request);
-    Optional<AppUser> optionalUser = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> optionalUser = userAuthenticationService.getAuthenticatedUser();
     if (!optionalUser.isPresent()) {
       return RestResponseUtil.createResponse(HttpStatus.UNAUTHORIZED);
     }
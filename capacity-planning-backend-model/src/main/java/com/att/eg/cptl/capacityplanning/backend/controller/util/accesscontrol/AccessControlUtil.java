@@ -6,13 +6,16 @@ import com.att.eg.cptl.capacityplanning.backend.model.AppUser;
 import com.att.eg.cptl.capacityplanning.backend.model.auth.Role;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.*;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.EnumMap;
+import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -31,7 +34,7 @@ public class AccessControlUtil {
       AppUser appUser,
       AccessControlledTreeObject accessControlledTreeObject,
       List<? extends AccessControlledTreeObject> ancestors,
-      List<String> usersGroups) {
+      Set<String> usersGroups) {
     return doesUserHavePermission(
         appUser,
         accessControlledTreeObject,
@@ -55,7 +58,7 @@ public class AccessControlUtil {
       AppUser appUser,
       AccessControlledTreeObject accessControlledTreeObject,
       List<? extends AccessControlledTreeObject> ancestors,
-      List<String> usersGroups) {
+      Set<String> usersGroups) {
     return doesUserHavePermission(
         appUser,
         accessControlledTreeObject,
@@ -78,7 +81,7 @@ public class AccessControlUtil {
       AppUser appUser,
       AccessControlledTreeObject accessControlledTreeObject,
       List<? extends AccessControlledTreeObject> ancestors,
-      List<String> usersGroups) {
+      Set<String> usersGroups) {
     return doesUserHavePermission(
         appUser,
         accessControlledTreeObject,
@@ -101,7 +104,7 @@ public class AccessControlUtil {
       AppUser appUser,
       AccessControlledTreeObject accessControlledTreeObject,
       List<? extends AccessControlledTreeObject> ancestors,
-      List<String> usersGroups) {
+      Set<String> usersGroups) {
     return doesUserHavePermission(
         appUser,
         accessControlledTreeObject,
@@ -116,27 +119,31 @@ public class AccessControlUtil {
    * @param accessControlledTreeObject The object to check access permissions on.
    * @param ancestors The ancestors of this node.
    * @param usersGroups The user groups which this user is a member of.
-   * @return List of the permissions which a user has for this node. Empty if none.
+   * @return Set of the permissions which a user has for this node. Empty if none.
    */
-  public List<Permission> getCurrentUsersPermissionsForThisNode(
+  public Set<Permission> getCurrentUsersPermissionsForThisNode(
       AppUser appUser,
       AccessControlledTreeObject accessControlledTreeObject,
       List<? extends AccessControlledTreeObject> ancestors,
-      List<String> usersGroups) {
+      Set<String> usersGroups) {
     if (appUser.getRole() == Role.ADMIN && !accessControlledTreeObject.getId().equals("root")) {
-      return Arrays.asList(Permission.values());
+      return EnumSet.allOf(Permission.class);
     }
     AccessControlType accessControlType = accessControlledTreeObject.getAccessControl();
     validateAccessControlTypeAndAppUser(accessControlType, appUser);
     if (appUser.getId().equals(accessControlledTreeObject.getOwnerId())
         || AccessControlType.PUBLIC_READ_WRITE.equals(
             accessControlledTreeObject.getAccessControl())) {
-      return Arrays.asList(Permission.values());
+      return EnumSet.allOf(Permission.class);
     }
     if (AccessControlType.PUBLIC_READ_ONLY.equals(accessControlledTreeObject.getAccessControl())) {
-      return Collections.singletonList(Permission.READ);
+      return EnumSet.of(Permission.READ);
     }
     if (AccessControlType.INHERIT.equals(accessControlledTreeObject.getAccessControl())) {
+      if (accessControlledTreeObject.getEffectiveAccessControl() != null) {
+        return getPermissions(
+            appUser, accessControlledTreeObject.getEffectiveAccessControl(), usersGroups);
+      }
       List<String> ancestorIds = accessControlledTreeObject.getAncestors();
       validateAncestorIds(ancestorIds);
       return getCurrentUsersPermissionsForThisNode(
@@ -149,30 +156,78 @@ public class AccessControlUtil {
       return getAclPermissions(appUser, accessControlledTreeObject.getAcl(), usersGroups);
     }
 
-    return Collections.emptyList();
+    return EnumSet.noneOf(Permission.class);
+  }
+
+  /**
+   * Evaluates the permissions of a user for a batch of nodes. Nodes with INHERIT access control
+   * which share a parent get the permissions of the ancestor they inherit from evaluated only once.
+   * Nodes which carry their effective access control don't need any ancestors.
+   *
+   * @param appUser The user to evaluate the permissions for.
+   * @param usersGroups The user groups which this user is a member of.
+   * @param accessControlledTreeObjects The nodes to evaluate.
+   * @param ancestors All ancestors of the given nodes, mapped by their ids.
+   * @return The permissions of the user, mapped by node id.
+   */
+  public Map<String, Set<Permission>> evaluate(
+      AppUser appUser,
+      Set<String> usersGroups,
+      Collection<? extends AccessControlledTreeObject> accessControlledTreeObjects,
+      Map<String, ? extends AccessControlledTreeObject> ancestors) {
+    Map<String, Set<Permission>> permissions = new HashMap<>();
+    Map<String, Set<Permission>> permissionsInheritedFromParent = new HashMap<>();
+    for (AccessControlledTreeObject node : accessControlledTreeObjects) {
+      boolean inheritsPermissions =
+          AccessControlType.INHERIT.equals(node.getAccessControl())
+              && !(appUser.getRole() == Role.ADMIN && !node.getId().equals("root"))
+              && !appUser.getId().equals(node.getOwnerId())
+              && node.getEffectiveAccessControl() == null;
+      if (!inheritsPermissions) {
+        permissions.put(
+            node.getId(),
+            getCurrentUsersPermissionsForThisNode(
+                appUser, node, Collections.emptyList(), usersGroups));
+        continue;
+      }
+      List<String> ancestorIds = node.getAncestors();
+      validateAncestorIds(ancestorIds);
+      String parentId = ancestorIds.get(ancestorIds.size() - 1);
+      Set<Permission> inheritedPermissions = permissionsInheritedFromParent.get(parentId);
+      if (inheritedPermissions == null) {
+        inheritedPermissions =
+            getCurrentUsersPermissionsForThisNode(
+                appUser,
+                getAncestorFromWhichPermissionsAreInherited(ancestorIds, ancestors),
+                null,
+                usersGroups);
+        permissionsInheritedFromParent.put(parentId, inheritedPermissions);
+      }
+      permissions.put(node.getId(), inheritedPermissions);
+    }
+    return permissions;
   }
 
-  public List<Permission> getPermissions(
-      AppUser appUser, AccessControlledObject object, List<String> usersGroupIds) {
+  public Set<Permission> getPermissions(
+      AppUser appUser, AccessControlledObject object, Set<String> usersGroupIds) {
     if (appUser.getRole() == Role.ADMIN) {
-      return Arrays.asList(
-          Permission.READ, Permission.CREATE, Permission.DELETE, Permission.MODIFY);
+      return EnumSet.allOf(Permission.class);
     }
     AccessControlType accessControlType = object.getAccessControl();
     validateAccessControlTypeAndAppUser(accessControlType, appUser);
     if (appUser.getId().equals(object.getOwnerId())
         || AccessControlType.PUBLIC_READ_WRITE.equals(object.getAccessControl())) {
-      return Arrays.asList(Permission.values());
+      return EnumSet.allOf(Permission.class);
     }
     if (AccessControlType.PUBLIC_READ_ONLY.equals(object.getAccessControl())) {
-      return Collections.singletonList(Permission.READ);
+      return EnumSet.of(Permission.READ);
     }
 
     if (AccessControlType.ADVANCED.equals(object.getAccessControl())) {
       return getAclPermissions(appUser, object.getAcl(), usersGroupIds);
     }
 
-    return Collections.emptyList();
+    return EnumSet.noneOf(Permission.class);
   }
 
   /**
@@ -191,7 +246,7 @@ public class AccessControlUtil {
       AppUser appUser,
       AccessControlledTreeObject accessControlledTreeObject,
       List<? extends AccessControlledTreeObject> ancestors,
-      List<String> usersGroups,
+      Set<String> usersGroups,
       Permission permissionToCheck,
       AccessControlType... accessControlTypesToCheck) {
 
@@ -205,6 +260,11 @@ public class AccessControlUtil {
       return true;
     }
     if (accessControlType.equals(AccessControlType.INHERIT)) {
+      if (accessControlledTreeObject.getEffectiveAccessControl() != null) {
+        return getPermissions(
+                appUser, accessControlledTreeObject.getEffectiveAccessControl(), usersGroups)
+            .contains(permissionToCheck);
+      }
       List<String> ancestorIds = accessControlledTreeObject.getAncestors();
       validateAncestorIds(ancestorIds);
       return doesUserHavePermission(
@@ -240,7 +300,7 @@ public class AccessControlUtil {
       AppUser user,
       List<AccessPermission> acl,
       Permission permissionToCheck,
-      List<String> usersGroups) {
+      Set<String> usersGroups) {
     for (AccessPermission accessPermission : acl) {
       if (AccessIdType.ALL.equals(accessPermission.getType())) {
         if (checkIfPermissionIsInPermissionsList(
@@ -262,12 +322,10 @@ public class AccessControlUtil {
           throw new InvalidPermissionsDefinedException(
               "Access ID Type of group must have an ID set.");
         }
-        for (String userGroupId : usersGroups) {
-          if (accessPermission.getId().equals(userGroupId)
-              && checkIfPermissionIsInPermissionsList(
-                  accessPermission.getPermissions(), permissionToCheck)) {
-            return true;
-          }
+        if (usersGroups.contains(accessPermission.getId())
+            && checkIfPermissionIsInPermissionsList(
+                accessPermission.getPermissions(), permissionToCheck)) {
+          return true;
         }
       }
     }
@@ -275,81 +333,55 @@ public class AccessControlUtil {
   }
 
   /**
-   * Check if this user has been granted permission in this node's ACL.
+   * Collects the permissions this user has been granted in this node's ACL. The permissions of all
+   * matching entries are OR-ed together.
    *
    * @param user The user who is attempting to access/edit this node.
    * @param acl The list of permissions given on this node.
    * @param usersGroups The list of user groups that this user is a member of.
-   * @return true if this user has been granted permission in the ACL.
+   * @return The permissions granted to this user in the ACL.
    */
-  private List<Permission> getAclPermissions(
-      AppUser user, List<AccessPermission> acl, List<String> usersGroups) {
-    Map<Permission, Boolean> permissionFlags = new EnumMap<>(Permission.class);
-    for (Permission permission : Permission.values()) {
-      permissionFlags.put(permission, false);
-    }
+  private Set<Permission> getAclPermissions(
+      AppUser user, List<AccessPermission> acl, Set<String> usersGroups) {
+    EnumSet<Permission> usersPermissions = EnumSet.noneOf(Permission.class);
 
     for (AccessPermission accessPermission : acl) {
+      if (accessPermission.getPermissions() == null) {
+        continue;
+      }
       if (AccessIdType.ALL.equals(accessPermission.getType())) {
-        for (Permission aclItemPermission : accessPermission.getPermissions()) {
-          if (aclItemPermission != null) {
-            permissionFlags.put(aclItemPermission, true);
-          }
-        }
+        usersPermissions.addAll(accessPermission.getPermissions());
       } else if (AccessIdType.USER.equals(accessPermission.getType())) {
         if (StringUtils.isBlank(accessPermission.getId())) {
           throw new InvalidPermissionsDefinedException(
               "Access ID Type of user must have an ID set.");
         }
         if (accessPermission.getId().equals(user.getId())) {
-          for (Permission aclItemPermission : accessPermission.getPermissions()) {
-            if (aclItemPermission != null) {
-              permissionFlags.put(aclItemPermission, true);
-            }
-          }
+          usersPermissions.addAll(accessPermission.getPermissions());
         }
       } else if (AccessIdType.GROUP.equals(accessPermission.getType())) {
         if (StringUtils.isBlank(accessPermission.getId())) {
           throw new InvalidPermissionsDefinedException(
               "Access ID Type of group must have an ID set.");
         }
-        for (String userGroupId : usersGroups) {
-          if (accessPermission.getId().equals(userGroupId)) {
-            for (Permission aclItemPermission : accessPermission.getPermissions()) {
-              if (aclItemPermission != null) {
-                permissionFlags.put(aclItemPermission, true);
-              }
-            }
-          }
+        if (usersGroups.contains(accessPermission.getId())) {
+          usersPermissions.addAll(accessPermission.getPermissions());
         }
       }
     }
-    List<Permission> usersPermissions = new ArrayList<>();
-    for (Map.Entry<Permission, Boolean> entry : permissionFlags.entrySet()) {
-      if (entry.getValue()) {
-        usersPermissions.add(entry.getKey());
-      }
-    }
     return usersPermissions;
   }
 
   /**
-   * Checks if a permission is in a list of permissions.
+   * Checks if a permission is in a set of permissions.
    *
-   * @param permissions The list to check.
+   * @param permissions The set to check.
    * @param permissionToCheck The permission.
    * @return true if permissionToCheck is present in permissions.
    */
   private boolean checkIfPermissionIsInPermissionsList(
-      List<Permission> permissions, Permission permissionToCheck) {
-    if (permissions != null) {
-      for (Permission permission : permissions) {
-        if (permissionToCheck.equals(permission)) {
-          return true;
-        }
-      }
-    }
-    return false;
+      Set<Permission> permissions, Permission permissionToCheck) {
+    return permissions != null && permissions.contains(permissionToCheck);
   }
 
   /**
@@ -366,6 +398,11 @@ public class AccessControlUtil {
     for (AccessControlledTreeObject accessControlledTreeObject : ancestors) {
       idToAncestorMap.put(accessControlledTreeObject.getId(), accessControlledTreeObject);
     }
+    return getAncestorFromWhichPermissionsAreInherited(ancestorIds, idToAncestorMap);
+  }
+
+  private AccessControlledTreeObject getAncestorFromWhichPermissionsAreInherited(
+      List<String> ancestorIds, Map<String, ? extends AccessControlledTreeObject> idToAncestorMap) {
     for (int curAncestor = ancestorIds.size() - 1; curAncestor >= 0; curAncestor--) {
       String ancestorId = ancestorIds.get(curAncestor);
       AccessControlledTreeObject ancestor = idToAncestorMap.get(ancestorId);
@@ -376,6 +413,54 @@ public class AccessControlUtil {
     throw new NotFoundException("Could not find non-inherit ancestor in ancestors list.");
   }
 
+  /**
+   * Gets the effective access control of a node.
+   *
+   * @param node The node.
+   * @param parentsEffectiveAccessControl The effective access control of the node's parent.
+   * @return The node's own access control if it doesn't inherit, the parent's effective access
+   *     control otherwise.
+   */
+  public AggregatedAccessControlInformation getEffectiveAccessControl(
+      AccessControlledTreeObject node,
+      @Nullable AggregatedAccessControlInformation parentsEffectiveAccessControl) {
+    if (node.getAccessControl() != AccessControlType.INHERIT) {
+      return AggregatedAccessControlInformation.fromAccessControlledObject(node);
+    }
+    return parentsEffectiveAccessControl;
+  }
+
+  /**
+   * Gets the effective access control of a batch of nodes, working top down so nodes can inherit
+   * from their parents within the batch.
+   *
+   * @param nodes The nodes.
+   * @param inherited The effective access control of nodes outside of the batch that nodes in the
+   *     batch may inherit from, mapped by node id.
+   * @return The effective access control mapped by node id. Nodes inheriting from a parent whose
+   *     effective access control is unknown are left out.
+   */
+  public Map<String, AggregatedAccessControlInformation> getEffectiveAccessControl(
+      Collection<? extends AccessControlledTreeObject> nodes,
+      Map<String, AggregatedAccessControlInformation> inherited) {
+    List<AccessControlledTreeObject> topDown = new ArrayList<>(nodes);
+    topDown.sort(Comparator.comparingInt(node -> node.getAncestors().size()));
+    Map<String, AggregatedAccessControlInformation> effective = new HashMap<>(inherited);
+    Map<String, AggregatedAccessControlInformation> result = new HashMap<>();
+    for (AccessControlledTreeObject node : topDown) {
+      List<String> ancestorIds = node.getAncestors();
+      AggregatedAccessControlInformation parentsEffectiveAccessControl =
+          ancestorIds.isEmpty() ? null : effective.get(ancestorIds.get(ancestorIds.size() - 1));
+      AggregatedAccessControlInformation nodesEffectiveAccessControl =
+          getEffectiveAccessControl(node, parentsEffectiveAccessControl);
+      if (nodesEffectiveAccessControl != null) {
+        effective.put(node.getId(), nodesEffectiveAccessControl);
+        result.put(node.getId(), nodesEffectiveAccessControl);
+      }
+    }
+    return result;
+  }
+
   public AggregatedAccessControlInformation getAggregatedAccessControl(
       AccessControlledObject accessControlledObject,
       List<? extends AccessControlledObject> ancestors) {
@@ -47,6 +47,20 @@ public class TrashUtil {
     this.trashItems(Collections.singletonList(trashableItem), repository);
   }
 
+  /**
+   * Trash an item and everything below it in the tree, all with the same trashed date.
+   *
+   * @param subtreeRoot The item at the top of the subtree to trash.
+   * @param repository The MongoRepository to use to trash the items.
+   * @param <S> The type of object to trash, which must be an instanceof Trashable.
+   * @return The number of trashed items.
+   */
+  public <S extends Trashable> long trashSubtree(S subtreeRoot, TreeNodeRepository repository) {
+    ZonedDateTime trashedDate = ZonedDateTime.now(ZoneId.of(TIMESTAMP_TIME_ZONE));
+    subtreeRoot.setTrashedDate(trashedDate);
+    return repository.trashSubtree(subtreeRoot.getId(), trashedDate);
+  }
+
   /**
    * Restore a list of items using the underlying MongoRepository.
    *
@@ -0,0 +1,140 @@
+package com.att.eg.cptl.capacityplanning.backend.dao;
+
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.NodeType;
+import com.att.eg.cptl.capacityplanning.backend.service.util.treenode.PatchOps;
+import com.mongodb.MongoClientSettings;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.bson.BsonBinarySubType;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.types.Binary;
+import org.springframework.lang.Nullable;
+
+/**
+ * Compresses the content of nodes of some types, if its BSON is at least a minimum size. The
+ * content is then stored as binary, a deflated copy of its BSON, instead of as a document. Content
+ * which doesn't get smaller is stored as it is. Compressed content is recognized by its binary
+ * subtype, so it can be read no matter how the codec is configured, or whether there is one at all.
+ */
+public class ContentCodec {
+  // the first of the user defined subtypes
+  private static final byte DEFLATED_BSON = BsonBinarySubType.USER_DEFINED.getValue();
+  private static final Codec<Document> DOCUMENT_CODEC =
+      MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+
+  private final Set<NodeType> nodeTypes;
+  private final int minSize;
+  private final MeterRegistry meterRegistry;
+
+  /**
+   * @param nodeTypes The types of nodes whose content is compressed.
+   * @param minSize The minimum size of the content's BSON in bytes.
+   */
+  public ContentCodec(Set<NodeType> nodeTypes, int minSize, MeterRegistry meterRegistry) {
+    this.nodeTypes = nodeTypes;
+    this.minSize = minSize;
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * Compress content, if it belongs to a node of one of the types and is large enough.
+   *
+   * @param type The type of the node as stored, i.e. the name of the {@link NodeType}.
+   * @param bson The BSON of the content.
+   * @return The compressed content, null if it isn't compressed.
+   */
+  @Nullable
+  public Binary compress(@Nullable Object type, ByteBuffer bson) {
+    int size = bson.remaining();
+    if (!isCompressed(type, size)) {
+      return null;
+    }
+    byte[] input = new byte[size];
+    bson.get(input);
+    Deflater deflater = new Deflater();
+    ByteArrayOutputStream output = new ByteArrayOutputStream(size / 4);
+    try {
+      deflater.setInput(input);
+      deflater.finish();
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        output.write(buffer, 0, deflater.deflate(buffer));
+      }
+    } finally {
+      deflater.end();
+    }
+    if (output.size() >= size) {
+      return null;
+    }
+    DistributionSummary.builder("content.codec.compressionRatio")
+        .description("size of content divided by its size once compressed")
+        .tag("type", (String) type)
+        .register(meterRegistry)
+        .record((double) size / output.size());
+    return toCompressed(output.toByteArray());
+  }
+
+  /**
+   * @param type The type of the node as stored, i.e. the name of the {@link NodeType}.
+   * @param size The size of the content's BSON in bytes.
+   * @return true if content of the node is compressed, unless it doesn't get smaller.
+   */
+  public boolean isCompressed(@Nullable Object type, int size) {
+    return size >= minSize && type instanceof String && isCompressedType((String) type);
+  }
+
+  private boolean isCompressedType(String type) {
+    return nodeTypes.stream().anyMatch(nodeType -> nodeType.name().equals(type));
+  }
+
+  /** @return true if the stored value is content compressed by a codec. */
+  public static boolean isCompressed(@Nullable Object value) {
+    return value instanceof Binary && ((Binary) value).getType() == DEFLATED_BSON;
+  }
+
+  /**
+   * @param deflated The deflated BSON of content, as compressed by a codec.
+   * @return The content as stored when compressed.
+   */
+  public static Binary toCompressed(byte[] deflated) {
+    return new Binary(DEFLATED_BSON, deflated);
+  }
+
+  /**
+   * Restore compressed content.
+   *
+   * @param compressed The content as stored.
+   * @return The content, as plain maps and lists like read by the converter.
+   */
+  public static Map<String, Object> inflate(Binary compressed) {
+    Inflater inflater = new Inflater();
+    ByteArrayOutputStream output = new ByteArrayOutputStream(compressed.length() * 4);
+    try {
+      inflater.setInput(compressed.getData());
+      byte[] buffer = new byte[8192];
+      while (!inflater.finished()) {
+        int inflated = inflater.inflate(buffer);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IllegalStateException("compressed content is truncated");
+        }
+        output.write(buffer, 0, inflated);
+      }
+    } catch (DataFormatException e) {
+      throw new IllegalStateException("compressed content is corrupt", e);
+    } finally {
+      inflater.end();
+    }
+    Document content = new RawBsonDocument(output.toByteArray()).decode(DOCUMENT_CODEC);
+    // nested documents would compare unequal to the maps of content read by the converter
+    return PatchOps.copyContent(content);
+  }
+}
@@ -0,0 +1,156 @@
+package com.att.eg.cptl.capacityplanning.backend.dao;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoGridFSException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import com.mongodb.client.gridfs.GridFSDownloadStream;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Set;
+import org.apache.commons.io.IOUtils;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stores content too large to be kept in a document in GridFS, split into chunks. Like blobs,
+ * files are named by the hash of the content and shared by all nodes, versions and releases with
+ * the same content. Content compressed by the {@link ContentCodec} is stored compressed.
+ *
+ * <p>Every upload gets a file id of its own, so an upload never collides with the chunks of a
+ * failed upload or of a file being removed. Content stored by several instances at the same time
+ * ends up in several files of the same name, any of which is read.
+ */
+@Component
+public class ContentFileStore {
+  private static final String BUCKET_NAME = "contentFile";
+  private static final Codec<Document> DOCUMENT_CODEC =
+      MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+
+  private final GridFSBucket bucket;
+  private final MongoCollection<Document> files;
+  private final MongoCollection<Document> chunks;
+  private final int threshold;
+
+  @Autowired
+  public ContentFileStore(
+      MongoDbFactory mongoDbFactory, @Value("${content.gridFs.threshold:8388608}") int threshold) {
+    this(mongoDbFactory.getDb(), threshold);
+  }
+
+  private ContentFileStore(MongoDatabase database, int threshold) {
+    this(
+        GridFSBuckets.create(database, BUCKET_NAME),
+        database.getCollection(BUCKET_NAME + ".files"),
+        database.getCollection(BUCKET_NAME + ".chunks"),
+        threshold);
+  }
+
+  ContentFileStore(
+      GridFSBucket bucket,
+      MongoCollection<Document> files,
+      MongoCollection<Document> chunks,
+      int threshold) {
+    this.bucket = bucket;
+    this.files = files;
+    this.chunks = chunks;
+    this.threshold = threshold;
+  }
+
+  /**
+   * @param size The size of the content as it would be stored, in bytes.
+   * @return true if the content is larger than {@code content.gridFs.threshold} and has to be
+   *     stored in a file.
+   */
+  public boolean exceedsThreshold(int size) {
+    return size > threshold;
+  }
+
+  /**
+   * Store content in a file, unless there is one for the same content already.
+   *
+   * @param id The hash of the content.
+   * @param data The BSON of the content, or its deflated BSON if compressed.
+   * @param compressed true if the content is compressed.
+   */
+  public void store(String id, byte[] data, boolean compressed) {
+    Date now = new Date();
+    // files which are already stored only need to be marked as referenced
+    Document referenced = new Document("$max", new Document("metadata.lastReferenced", now));
+    if (files.updateMany(new Document("filename", id), referenced).getMatchedCount() > 0) {
+      return;
+    }
+    GridFSUploadOptions options =
+        new GridFSUploadOptions()
+            .metadata(new Document("compressed", compressed).append("lastReferenced", now));
+    // the files document is only written once all chunks are, so the file is complete once found
+    bucket.uploadFromStream(id, new ByteArrayInputStream(data), options);
+  }
+
+  /**
+   * Read content from its file.
+   *
+   * @param id The hash of the content.
+   * @return The content as a document, or as {@link ContentCodec compressed} binary. null if there
+   *     is no such file.
+   */
+  @Nullable
+  public Object read(String id) {
+    try (GridFSDownloadStream stream = bucket.openDownloadStream(id)) {
+      byte[] data = IOUtils.toByteArray(stream);
+      Document metadata = stream.getGridFSFile().getMetadata();
+      if (metadata != null && Boolean.TRUE.equals(metadata.getBoolean("compressed"))) {
+        return ContentCodec.toCompressed(data);
+      }
+      return new RawBsonDocument(data).decode(DOCUMENT_CODEC);
+    } catch (MongoGridFSException e) {
+      return null;
+    } catch (IOException e) {
+      throw new IllegalStateException("could not read content " + id, e);
+    }
+  }
+
+  /**
+   * Remove the files which aren't referenced anymore.
+   *
+   * @param referencedIds The hashes of all content still referenced in files.
+   * @param cutoff Files referenced after this are kept regardless.
+   * @return The number of removed files.
+   */
+  public long removeUnreferenced(Set<String> referencedIds, Date cutoff) {
+    long removed = 0;
+    Document notReferencedSince =
+        new Document("metadata.lastReferenced", new Document("$lt", cutoff));
+    try (MongoCursor<Document> unreferencedFiles =
+        files
+            .find(notReferencedSince)
+            .projection(new Document("_id", 1).append("filename", 1))
+            .iterator()) {
+      while (unreferencedFiles.hasNext()) {
+        Document file = unreferencedFiles.next();
+        if (referencedIds.contains(file.getString("filename"))) {
+          continue;
+        }
+        // the file may have been referenced again since it was found
+        Document stillNotReferenced = new Document("_id", file.get("_id"));
+        stillNotReferenced.putAll(notReferencedSince);
+        if (files.deleteOne(stillNotReferenced).getDeletedCount() > 0) {
+          chunks.deleteMany(new Document("files_id", file.get("_id")));
+          removed++;
+        }
+      }
+    }
+    return removed;
+  }
+}
@@ -0,0 +1,203 @@
+package com.att.eg.cptl.capacityplanning.backend.dao;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.NodeType;
+import com.google.common.base.Strings;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoGridFSException;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSDownloadStream;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import org.apache.commons.io.IOUtils;
+import org.bson.BsonObjectId;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.conversions.Bson;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class ContentFileStoreTest {
+  private static final int THRESHOLD = 1024;
+  private static final Codec<Document> DOCUMENT_CODEC =
+      MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+
+  private GridFSBucket bucket;
+  private MongoCollection<Document> files;
+  private MongoCollection<Document> chunks;
+  private ContentFileStore contentFileStore;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setup() {
+    bucket = mock(GridFSBucket.class);
+    files = mock(MongoCollection.class);
+    chunks = mock(MongoCollection.class);
+    contentFileStore = new ContentFileStore(bucket, files, chunks, THRESHOLD);
+  }
+
+  @Test
+  public void testContentBelowThresholdIsKeptInDocument() {
+    Assert.assertFalse(contentFileStore.exceedsThreshold(THRESHOLD - 1));
+  }
+
+  @Test
+  public void testContentAtThresholdIsKeptInDocument() {
+    Assert.assertFalse(contentFileStore.exceedsThreshold(THRESHOLD));
+  }
+
+  @Test
+  public void testContentAboveThresholdIsStoredInFile() {
+    Assert.assertTrue(contentFileStore.exceedsThreshold(THRESHOLD + 1));
+  }
+
+  @Test
+  public void testStoreUploadsNewContent() {
+    when(files.updateMany(any(Bson.class), any(Bson.class)))
+        .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+    contentFileStore.store("hash", new byte[THRESHOLD + 1], false);
+    verify(bucket)
+        .uploadFromStream(eq("hash"), any(InputStream.class), any(GridFSUploadOptions.class));
+  }
+
+  @Test
+  public void testStoreOnlyMarksStoredContentAsReferenced() {
+    when(files.updateMany(any(Bson.class), any(Bson.class)))
+        .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+    contentFileStore.store("hash", new byte[THRESHOLD + 1], false);
+    verify(bucket, never())
+        .uploadFromStream(
+            any(String.class), any(InputStream.class), any(GridFSUploadOptions.class));
+  }
+
+  @Test
+  public void testReadRestoresStoredContent() throws IOException {
+    Document content = new Document("name", "model").append("values", Arrays.asList(1, 2, 3));
+    byte[] bson = toBson(content);
+    serveStoredFile("hash", bson, false);
+    Assert.assertEquals(content, contentFileStore.read("hash"));
+  }
+
+  @Test
+  public void testReadRestoresStoredCompressedContent() throws IOException {
+    Document content = new Document("data", Strings.repeat("x", THRESHOLD * 4));
+    Binary compressed =
+        new ContentCodec(EnumSet.of(NodeType.MODEL), 0, new SimpleMeterRegistry())
+            .compress("MODEL", ByteBuffer.wrap(toBson(content)));
+    Assert.assertNotNull(compressed);
+    serveStoredFile("hash", compressed.getData(), true);
+    Object read = contentFileStore.read("hash");
+    Assert.assertTrue(ContentCodec.isCompressed(read));
+    Assert.assertEquals(content, new Document(ContentCodec.inflate((Binary) read)));
+  }
+
+  @Test
+  public void testReadOfMissingFileIsNull() {
+    when(bucket.openDownloadStream("hash")).thenThrow(new MongoGridFSException("no such file"));
+    Assert.assertNull(contentFileStore.read("hash"));
+  }
+
+  @Test
+  public void testRemoveUnreferencedRemovesFileAndChunks() {
+    ObjectId fileId = findFile("hash");
+    when(files.deleteOne(any(Bson.class))).thenReturn(DeleteResult.acknowledged(1));
+    Assert.assertEquals(1, contentFileStore.removeUnreferenced(Collections.emptySet(), new Date()));
+    verify(chunks).deleteMany(new Document("files_id", fileId));
+  }
+
+  @Test
+  public void testRemoveUnreferencedKeepsFileReferencedAgain() {
+    findFile("hash");
+    when(files.deleteOne(any(Bson.class))).thenReturn(DeleteResult.acknowledged(0));
+    Assert.assertEquals(0, contentFileStore.removeUnreferenced(Collections.emptySet(), new Date()));
+    verify(chunks, never()).deleteMany(any(Bson.class));
+  }
+
+  @Test
+  public void testRemoveUnreferencedKeepsReferencedFile() {
+    findFile("hash");
+    Assert.assertEquals(
+        0, contentFileStore.removeUnreferenced(Collections.singleton("hash"), new Date()));
+    verify(files, never()).deleteOne(any(Bson.class));
+  }
+
+  private static byte[] toBson(Document content) {
+    ByteBuffer bson = new RawBsonDocument(content, DOCUMENT_CODEC).getByteBuffer().asNIO();
+    byte[] data = new byte[bson.remaining()];
+    bson.get(data);
+    return data;
+  }
+
+  /** Store data through the store and serve what was uploaded as the file's content. */
+  private void serveStoredFile(String name, byte[] data, boolean compressed) throws IOException {
+    when(files.updateMany(any(Bson.class), any(Bson.class)))
+        .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+    contentFileStore.store(name, data, compressed);
+    ArgumentCaptor<InputStream> uploaded = ArgumentCaptor.forClass(InputStream.class);
+    ArgumentCaptor<GridFSUploadOptions> options =
+        ArgumentCaptor.forClass(GridFSUploadOptions.class);
+    verify(bucket).uploadFromStream(eq(name), uploaded.capture(), options.capture());
+    InputStream source = new ByteArrayInputStream(IOUtils.toByteArray(uploaded.getValue()));
+    GridFSDownloadStream stream = mock(GridFSDownloadStream.class);
+    when(stream.read()).thenAnswer(invocation -> source.read());
+    when(stream.read(any(byte[].class)))
+        .thenAnswer(invocation -> source.read((byte[]) invocation.getArguments()[0]));
+    when(stream.read(any(byte[].class), anyInt(), anyInt()))
+        .thenAnswer(
+            invocation ->
+                source.read(
+                    (byte[]) invocation.getArguments()[0],
+                    (Integer) invocation.getArguments()[1],
+                    (Integer) invocation.getArguments()[2]));
+    when(stream.getGridFSFile())
+        .thenReturn(
+            new GridFSFile(
+                new BsonObjectId(),
+                name,
+                data.length,
+                255 * 1024,
+                new Date(),
+                null,
+                options.getValue().getMetadata()));
+    when(bucket.openDownloadStream(name)).thenReturn(stream);
+  }
+
+  @SuppressWarnings("unchecked")
+  private ObjectId findFile(String name) {
+    ObjectId fileId = new ObjectId();
+    FindIterable<Document> found = mock(FindIterable.class);
+    MongoCursor<Document> cursor = mock(MongoCursor.class);
+    when(files.find(any(Bson.class))).thenReturn(found);
+    when(found.projection(any(Bson.class))).thenReturn(found);
+    when(found.iterator()).thenReturn(cursor);
+    when(cursor.hasNext()).thenReturn(true, false);
+    when(cursor.next()).thenReturn(new Document("_id", fileId).append("filename", name));
+    return fileId;
+  }
+}
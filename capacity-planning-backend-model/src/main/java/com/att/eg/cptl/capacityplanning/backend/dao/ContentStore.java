@@ -0,0 +1,322 @@
+package com.att.eg.cptl.capacityplanning.backend.dao;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.ContentBlob;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNode;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNodeBase;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNodeLog;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ForwardingMap;
+import com.google.common.io.BaseEncoding;
+import com.mongodb.MongoClientSettings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.types.Binary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterConvertEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stores the content of tree nodes, versions and releases once per distinct content. Content of at
+ * least {@code content.blobStore.minSize} bytes is moved into a {@link ContentBlob} keyed by the
+ * SHA-256 hash of its BSON right before the document is written, and the document only keeps the
+ * hash. Loading the document puts the content back, so the models never see the hash. Recently
+ * used blobs are kept in memory, bounded by their total size. Blobs which aren't referenced
+ * anymore are removed by the {@link
+ * com.att.eg.cptl.capacityplanning.backend.jobs.ContentBlobCollector}.
+ *
+ * <p>Content which would still be too large for a document is stored in a file of the {@link
+ * ContentFileStore} instead, see {@code content.gridFs.threshold}.
+ *
+ * <p>If a {@link ContentCodec} is configured, content is compressed as well, whether it's stored in
+ * a blob or with the document. Compressed content of tree nodes, versions and releases is only
+ * inflated once their content is accessed.
+ */
+@Component
+public class ContentStore extends AbstractMongoEventListener<Object> {
+  private static final Logger LOGGER = LogManager.getLogger(ContentStore.class);
+  private static final Codec<Document> DOCUMENT_CODEC =
+      MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+
+  /** The field holding the hash of the content in place of the content, if stored in a blob. */
+  public static final String HASH_FIELD = "contentHash";
+
+  /** The field holding the hash of the content in place of the content, if stored in a file. */
+  public static final String FILE_FIELD = "contentFile";
+
+  /** The fields which may hold a reference to the content in place of the content. */
+  public static final String[] STORAGE_FIELDS = {HASH_FIELD, FILE_FIELD};
+
+  /** The fields to leave out to read a document without its content. */
+  public static final String[] CONTENT_FIELDS = {"content", HASH_FIELD, FILE_FIELD};
+
+  // holds compressed content between loading a document and converting it
+  private static final String COMPRESSED_CONTENT_FIELD = "_compressedContent";
+
+  @Autowired private MongoOperations mongoOperations;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  @Autowired private ContentFileStore contentFileStore;
+
+  // only configured if content is to be compressed, compressed content is read regardless
+  @Autowired(required = false)
+  @Nullable
+  private ContentCodec contentCodec;
+
+  @Value("${content.blobStore.enabled:true}")
+  private boolean enabled;
+
+  @Value("${content.blobStore.minSize:1048576}")
+  private int minSize;
+
+  @Value("${content.blobCache.maxBytes:67108864}")
+  private long cacheMaxBytes;
+
+  private Set<String> collectionNames;
+
+  private String blobCollectionName;
+
+  // blobs as stored, with their content and size, weighed by the size of what's stored
+  private Cache<String, Document> blobCache;
+
+  @PostConstruct
+  public void init() {
+    collectionNames =
+        new HashSet<>(
+            Arrays.asList(
+                mongoOperations.getCollectionName(TreeNode.class),
+                mongoOperations.getCollectionName(TreeNodeLog.class)));
+    blobCollectionName = mongoOperations.getCollectionName(ContentBlob.class);
+    blobCache =
+        CacheBuilder.newBuilder()
+            .maximumWeight(cacheMaxBytes)
+            .<String, Document>weigher((hash, blob) -> getSize(blob))
+            .build();
+  }
+
+  @Override
+  public void onBeforeSave(BeforeSaveEvent<Object> event) {
+    if (collectionNames.contains(event.getCollectionName()) && event.getDocument() != null) {
+      encode(event.getDocument());
+    }
+  }
+
+  @Override
+  public void onAfterLoad(AfterLoadEvent<Object> event) {
+    if (collectionNames.contains(event.getCollectionName()) && event.getDocument() != null) {
+      resolve(event.getDocument(), TreeNodeBase.class.isAssignableFrom(event.getType()));
+    }
+  }
+
+  @Override
+  public void onAfterConvert(AfterConvertEvent<Object> event) {
+    Object compressed =
+        event.getDocument() == null ? null : event.getDocument().remove(COMPRESSED_CONTENT_FIELD);
+    if (compressed != null && event.getSource() instanceof TreeNodeBase) {
+      String type = String.valueOf(event.getDocument().get("type"));
+      ((TreeNodeBase) event.getSource()).setContent(new LazyContent((Binary) compressed, type));
+    }
+  }
+
+  /**
+   * Compress the content of a document about to be written, if the codec applies to it, and move
+   * it into a file or a blob, if it's large enough, leaving only its hash.
+   *
+   * @param document The document as written to treeNode or treeNodeLog.
+   */
+  public void encode(Document document) {
+    Object content = document.get("content");
+    if (!(content instanceof Document)) {
+      return;
+    }
+    ByteBuffer bson =
+        new RawBsonDocument((Document) content, DOCUMENT_CODEC).getByteBuffer().asNIO();
+    int size = bson.remaining();
+    Object storedContent = content;
+    if (contentCodec != null) {
+      Binary compressed = contentCodec.compress(document.get("type"), bson.duplicate());
+      if (compressed != null) {
+        storedContent = compressed;
+      }
+    }
+    int storedSize = storedContent instanceof Binary ? ((Binary) storedContent).length() : size;
+    if (contentFileStore.exceedsThreshold(storedSize)) {
+      String hash = hash(bson.duplicate());
+      if (storedContent instanceof Binary) {
+        contentFileStore.store(hash, ((Binary) storedContent).getData(), true);
+      } else {
+        byte[] data = new byte[size];
+        bson.duplicate().get(data);
+        contentFileStore.store(hash, data, false);
+      }
+      document.remove("content");
+      document.put(FILE_FIELD, hash);
+      return;
+    }
+    if (!enabled || size < minSize) {
+      document.put("content", storedContent);
+      return;
+    }
+    String hash = hash(bson);
+    Query blobQuery = new Query(where("_id").is(hash));
+    // blobs which are already stored only need to be marked as referenced
+    Update referenced = new Update().max("lastReferenced", new Date());
+    boolean stored =
+        blobCache.getIfPresent(hash) != null
+            && mongoOperations
+                    .updateFirst(blobQuery, referenced, blobCollectionName)
+                    .getMatchedCount()
+                > 0;
+    if (!stored) {
+      mongoOperations.upsert(
+          blobQuery,
+          referenced.setOnInsert("content", storedContent).setOnInsert("size", size),
+          blobCollectionName);
+      blobCache.put(hash, new Document("content", storedContent).append("size", size));
+    }
+    document.remove("content");
+    document.put(HASH_FIELD, hash);
+  }
+
+  /**
+   * Whether content of the given size would be written with the document as it is, not compressed
+   * and not moved into a blob or a file. Only such content can be patched in place.
+   *
+   * @param type The type of the node as stored, i.e. the name of the {@link
+   *     com.att.eg.cptl.capacityplanning.backend.model.treenode.NodeType}.
+   * @param size The size of the content's BSON in bytes.
+   */
+  public boolean isStoredInline(@Nullable Object type, int size) {
+    return (!enabled || size < minSize)
+        && (contentCodec == null || !contentCodec.isCompressed(type, size))
+        && !contentFileStore.exceedsThreshold(size);
+  }
+
+  /**
+   * @param content Content or a part of it.
+   * @return The size of its BSON in bytes.
+   */
+  public static int getBsonSize(Map<String, Object> content) {
+    return new RawBsonDocument(new Document(content), DOCUMENT_CODEC).getByteBuffer().remaining();
+  }
+
+  /**
+   * Put the content of a blob or file back in place of its hash, and take care of compressed
+   * content.
+   *
+   * @param document The document as loaded.
+   * @param lazy true to inflate compressed content only once it's accessed, which is left to
+   *     {@link #onAfterConvert(AfterConvertEvent)}.
+   */
+  private void resolve(Document document, boolean lazy) {
+    Object fileId = document.remove(FILE_FIELD);
+    if (fileId instanceof String) {
+      Object content = contentFileStore.read((String) fileId);
+      if (content == null) {
+        LOGGER.error("content file " + fileId + " of " + document.get("_id") + " is missing");
+        return;
+      }
+      document.put("content", content);
+    }
+    Object hash = document.remove(HASH_FIELD);
+    if (hash instanceof String) {
+      Document blob = blobCache.getIfPresent(hash);
+      if (blob == null) {
+        blob = mongoOperations.findById(hash, Document.class, blobCollectionName);
+        if (blob == null) {
+          LOGGER.error("content " + hash + " of " + document.get("_id") + " is missing");
+          return;
+        }
+        blobCache.put((String) hash, blob);
+      }
+      // shared with the cache, the converter reads it into new maps
+      document.put("content", blob.get("content"));
+    }
+    Object content = document.get("content");
+    if (ContentCodec.isCompressed(content)) {
+      if (lazy) {
+        document.remove("content");
+        document.put(COMPRESSED_CONTENT_FIELD, content);
+      } else {
+        document.put("content", inflate((Binary) content, String.valueOf(document.get("type"))));
+      }
+    }
+  }
+
+  private Map<String, Object> inflate(Binary compressed, String type) {
+    Timer.Sample sample = Timer.start(meterRegistry);
+    Map<String, Object> content = ContentCodec.inflate(compressed);
+    sample.stop(
+        Timer.builder("content.codec.inflate")
+            .description("time to inflate compressed content")
+            .tag("type", type)
+            .register(meterRegistry));
+    return content;
+  }
+
+  /** Content of a node, version or release which is inflated on first access. */
+  private final class LazyContent extends ForwardingMap<String, Object> {
+    @Nullable private Binary compressed;
+    private final String type;
+    private Map<String, Object> content;
+
+    private LazyContent(Binary compressed, String type) {
+      this.compressed = compressed;
+      this.type = type;
+    }
+
+    @Override
+    protected synchronized Map<String, Object> delegate() {
+      if (compressed != null) {
+        content = inflate(compressed, type);
+        compressed = null;
+      }
+      return content;
+    }
+  }
+
+  private int getSize(Document blob) {
+    Object content = blob.get("content");
+    if (content instanceof Binary) {
+      return ((Binary) content).length();
+    }
+    Object size = blob.get("size");
+    return size instanceof Number ? ((Number) size).intValue() : 0;
+  }
+
+  private String hash(ByteBuffer bson) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(bson);
+      return BaseEncoding.base16().lowerCase().encode(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform supports SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+}
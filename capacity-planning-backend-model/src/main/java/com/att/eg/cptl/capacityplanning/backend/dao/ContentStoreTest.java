@@ -0,0 +1,91 @@
+package com.att.eg.cptl.capacityplanning.backend.dao;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Strings;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.commons.io.IOUtils;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.conversions.Bson;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.data.mongodb.core.MongoOperations;
+
+public class ContentStoreTest {
+  private static final int THRESHOLD = 1024;
+  private static final Codec<Document> DOCUMENT_CODEC =
+      MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+
+  private GridFSBucket bucket;
+  private ContentStore contentStore;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setup() {
+    bucket = mock(GridFSBucket.class);
+    MongoCollection<Document> files = mock(MongoCollection.class);
+    when(files.updateMany(any(Bson.class), any(Bson.class)))
+        .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+    contentStore = new ContentStore();
+    DirectFieldAccessor fields = new DirectFieldAccessor(contentStore);
+    fields.setPropertyValue("mongoOperations", mock(MongoOperations.class));
+    fields.setPropertyValue("meterRegistry", new SimpleMeterRegistry());
+    fields.setPropertyValue(
+        "contentFileStore",
+        new ContentFileStore(bucket, files, mock(MongoCollection.class), THRESHOLD));
+    // only the file threshold applies
+    fields.setPropertyValue("enabled", false);
+    fields.setPropertyValue("cacheMaxBytes", 1024L * 1024);
+    contentStore.init();
+  }
+
+  @Test
+  public void testContentAtThresholdIsKeptInDocument() {
+    Document content = contentOfSize(THRESHOLD);
+    Document document = new Document("type", "MODEL").append("content", content);
+    contentStore.encode(document);
+    Assert.assertSame(content, document.get("content"));
+    Assert.assertFalse(document.containsKey(ContentStore.FILE_FIELD));
+    verify(bucket, never())
+        .uploadFromStream(anyString(), any(InputStream.class), any(GridFSUploadOptions.class));
+  }
+
+  @Test
+  public void testContentAboveThresholdIsStoredInFile() throws IOException {
+    Document content = contentOfSize(THRESHOLD + 1);
+    Document document = new Document("type", "MODEL").append("content", content);
+    contentStore.encode(document);
+    Assert.assertFalse(document.containsKey("content"));
+    String hash = document.getString(ContentStore.FILE_FIELD);
+    Assert.assertNotNull(hash);
+    ArgumentCaptor<InputStream> stored = ArgumentCaptor.forClass(InputStream.class);
+    verify(bucket).uploadFromStream(eq(hash), stored.capture(), any(GridFSUploadOptions.class));
+    byte[] data = IOUtils.toByteArray(stored.getValue());
+    Assert.assertEquals(THRESHOLD + 1, data.length);
+    Assert.assertEquals(content, new RawBsonDocument(data).decode(DOCUMENT_CODEC));
+  }
+
+  /** @return Content whose BSON is exactly the given number of bytes. */
+  private static Document contentOfSize(int size) {
+    int padding = size - ContentStore.getBsonSize(new Document("data", ""));
+    return new Document("data", Strings.repeat("x", padding));
+  }
+}
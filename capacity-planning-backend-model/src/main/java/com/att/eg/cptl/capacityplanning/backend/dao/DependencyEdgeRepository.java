@@ -0,0 +1,33 @@
+package com.att.eg.cptl.capacityplanning.backend.dao;
+
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.DependencyEdge;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface DependencyEdgeRepository
+    extends MongoRepository<DependencyEdge, String>, DependencyEdgeRepositoryCustom {
+  /**
+   * Get the edges of all nodes and releases which depend on any of the given nodes.
+   *
+   * @param dependencyIds The ids of the nodes to find the dependents of.
+   * @return The edges pointing to the given nodes.
+   */
+  List<DependencyEdge> findByDependencyIdIn(Collection<String> dependencyIds);
+
+  /**
+   * Get the edges of the current versions of all nodes which depend on the given node.
+   *
+   * @param dependencyId The id of the node to find the dependents of.
+   * @return The edges pointing to the given node, without those of releases.
+   */
+  List<DependencyEdge> findByDependencyIdAndDependentReleaseNrIsNull(String dependencyId);
+
+  /**
+   * Get the edges of the current version of a node to the nodes it depends on.
+   *
+   * @param dependentId The id of the dependent node.
+   * @return The edges starting at the given node, without those of its releases.
+   */
+  List<DependencyEdge> findByDependentIdAndDependentReleaseNrIsNull(String dependentId);
+}
@@ -0,0 +1,32 @@
+package com.att.eg.cptl.capacityplanning.backend.dao;
+
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.DependencyEdge;
+import java.util.Collection;
+import org.springframework.lang.Nullable;
+
+public interface DependencyEdgeRepositoryCustom {
+  /**
+   * Replace the edges of a node, or one of its releases, to the nodes it depends on.
+   *
+   * @param dependentId The id of the dependent node.
+   * @param dependentReleaseNr The release number of the dependent release, null for the current
+   *     version of the node.
+   * @param edges The new edges.
+   */
+  void replaceEdges(
+      String dependentId, @Nullable Long dependentReleaseNr, Collection<DependencyEdge> edges);
+
+  void insertEdges(Collection<DependencyEdge> edges);
+
+  /**
+   * Add the given edges, unless an edge between the same dependent and dependency exists already,
+   * in which case that one is left as it is.
+   */
+  void upsertEdges(Collection<DependencyEdge> edges);
+
+  /** Mark the edges of the current versions of the given nodes as (not) trashed. */
+  void setTrashed(Collection<String> dependentIds, boolean trashed);
+
+  /** Remove all edges of the given nodes and their releases. */
+  void removeEdges(Collection<String> dependentIds);
+}
@@ -0,0 +1,73 @@
+package com.att.eg.cptl.capacityplanning.backend.dao;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.DependencyEdge;
+import java.util.Collection;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.lang.Nullable;
+
+@RequiredArgsConstructor
+public class DependencyEdgeRepositoryImpl implements DependencyEdgeRepositoryCustom {
+  private final MongoOperations operations;
+
+  @Override
+  public void replaceEdges(
+      String dependentId, @Nullable Long dependentReleaseNr, Collection<DependencyEdge> edges) {
+    operations.remove(
+        new Query(
+            where("dependentId").is(dependentId).and("dependentReleaseNr").is(dependentReleaseNr)),
+        DependencyEdge.class);
+    insertEdges(edges);
+  }
+
+  @Override
+  public void insertEdges(Collection<DependencyEdge> edges) {
+    if (!edges.isEmpty()) {
+      operations.insert(edges, DependencyEdge.class);
+    }
+  }
+
+  @Override
+  public void upsertEdges(Collection<DependencyEdge> edges) {
+    if (edges.isEmpty()) {
+      return;
+    }
+    BulkOperations bulkOperations =
+        operations.bulkOps(BulkOperations.BulkMode.UNORDERED, DependencyEdge.class);
+    for (DependencyEdge edge : edges) {
+      bulkOperations.upsert(
+          new Query(
+              where("dependentId")
+                  .is(edge.getDependentId())
+                  .and("dependentReleaseNr")
+                  .is(edge.getDependentReleaseNr())
+                  .and("dependencyId")
+                  .is(edge.getDependencyId())),
+          new Update()
+              .setOnInsert("dependentType", edge.getDependentType())
+              .setOnInsert("direct", edge.isDirect())
+              .setOnInsert("trackingMode", edge.getTrackingMode())
+              .setOnInsert("releaseNr", edge.getReleaseNr())
+              .setOnInsert("trashed", edge.getTrashed()));
+    }
+    bulkOperations.execute();
+  }
+
+  @Override
+  public void setTrashed(Collection<String> dependentIds, boolean trashed) {
+    operations.updateMulti(
+        new Query(where("dependentId").in(dependentIds).and("dependentReleaseNr").is(null)),
+        new Update().set("trashed", trashed),
+        DependencyEdge.class);
+  }
+
+  @Override
+  public void removeEdges(Collection<String> dependentIds) {
+    operations.remove(new Query(where("dependentId").in(dependentIds)), DependencyEdge.class);
+  }
+}
@@ -1,14 +1,17 @@
 package com.att.eg.cptl.capacityplanning.backend.dao;
 
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.CombinedId;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.NodeType;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNodeLog;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.lang.Nullable;
 
 public interface TreeNodeLogRepositoryCustom {
   List<TreeNodeLog> findReleases(String nodeId, boolean sparse);
 
-  List<String> findDependentBaseNodeReleaseIds(String referringNodeId);
-
   List<TreeNodeLog> findVersions(String nodeId, boolean sparse);
 
   TreeNodeLog findRelease(String baseNodeId, Long releaseNr, boolean sparse);
@@ -17,14 +20,66 @@ public interface TreeNodeLogRepositoryCustom {
 
   TreeNodeLog findLogEntry(String logEntryId, boolean sparse);
 
+  /**
+   * Get the release or version a combined id refers to with only what's needed to tell whether it
+   * has changed: its id, version, name, log comment and dates.
+   *
+   * @param combinedId The id of a release or version.
+   * @return null if there is no such release or version.
+   */
+  @Nullable
+  TreeNodeLog findLogEntryVersion(CombinedId combinedId);
+
   TreeNodeLog findLatestRelease(String baseNodeId, boolean sparse);
 
+  /**
+   * Finds the latest release of each of the given nodes with a single query.
+   *
+   * @param baseNodeIds The ids of the nodes to get the latest releases for.
+   * @param sparse true to leave out the content of the releases.
+   * @return The latest releases mapped by base node id. Nodes without release are not contained.
+   */
+  Map<String, TreeNodeLog> findLatestReleases(Collection<String> baseNodeIds, boolean sparse);
+
+  /**
+   * Like {@link #findLatestReleases(Collection, boolean)}, but the releases only carry what's
+   * needed to work out deep dependencies.
+   */
+  Map<String, TreeNodeLog> findLatestReleaseDependencies(Collection<String> baseNodeIds);
+
+  /**
+   * Finds the given releases of nodes with a single query. The releases only carry what's needed
+   * to work out deep dependencies.
+   *
+   * @param releaseNrsByBaseNodeId The release numbers to find, mapped by base node id.
+   * @return The releases found.
+   */
+  List<TreeNodeLog> findReleaseDependencies(Map<String, Set<Long>> releaseNrsByBaseNodeId);
+
   TreeNodeLog findLatestVersion(String baseNodeId, boolean sparse);
 
   TreeNodeLog insertRelease(TreeNodeLog release);
 
   TreeNodeLog insertVersion(TreeNodeLog version);
 
+  /**
+   * Insert versions with a single write. A version replaces the previous version of its node if
+   * they were both made by the same user within a few minutes, also within the batch. The content
+   * is stored as a delta against the previous version, except for every few versions which keep
+   * the full content. Reading a version restores its content.
+   *
+   * @param versions The versions to insert, oldest first.
+   */
+  void insertVersions(List<TreeNodeLog> versions);
+
+  /**
+   * Get which of the given log entries are stored.
+   *
+   * @param logEntryIds The ids of the log entries.
+   * @return The ids of those which are stored.
+   */
+  List<String> findStoredIds(Collection<String> logEntryIds);
+
   void updateLogComment(String logEntryId, String comment);
 
   void renameReleases(String baseNodeId, String name);
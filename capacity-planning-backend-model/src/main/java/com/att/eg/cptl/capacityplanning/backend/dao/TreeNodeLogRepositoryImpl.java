@@ -1,23 +1,120 @@
 package com.att.eg.cptl.capacityplanning.backend.dao;
 
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.*;
+import com.att.eg.cptl.capacityplanning.backend.service.util.treenode.ContentDeltaOps;
+import com.att.eg.cptl.capacityplanning.backend.service.util.treenode.PatchOps;
 import com.att.eg.cptl.capacityplanning.backend.util.Constants;
-import com.mongodb.client.result.UpdateResult;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mongodb.MongoClientSettings;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.apache.commons.lang.StringUtils;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.aggregation.ProjectionOperation;
 import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Field;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.lang.Nullable;
 
 @RequiredArgsConstructor
 public class TreeNodeLogRepositoryImpl implements TreeNodeLogRepositoryCustom {
+  private static final Codec<Document> DOCUMENT_CODEC =
+      MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+  // what a cached entry weighs besides its content
+  private static final int CACHED_ENTRY_WEIGHT = 1024;
+  private static final long NO_RELEASE = 0L;
+  private static final String[] LOG_ENTRY_VERSION_FIELDS = {
+    "id", "version", "releaseNr", "name", "logComment", "lastModifiedDate", "logDate"
+  };
+
   private final MongoOperations operations;
+  private final MeterRegistry meterRegistry;
+
+  @Value("${treenode.versionLog.snapshotInterval:20}")
+  private int snapshotInterval;
+
+  @Value("${treenode.logCache.maxBytes:67108864}")
+  private long logCacheMaxBytes;
+
+  /**
+   * Releases and versions don't change once written, but they may be renamed, commented on or
+   * replaced by other instances, so entries must not live forever.
+   */
+  @Value("${treenode.logCache.ttlSeconds:600}")
+  private long logCacheTtlSeconds;
+
+  /** Other instances may make releases, this bounds how long the latest release is behind. */
+  @Value("${treenode.logCache.latestReleaseTtlSeconds:10}")
+  private long latestReleaseTtlSeconds;
+
+  // releases and versions as read, by their combined id, weighed by the size of their content
+  private Cache<String, TreeNodeLog> logCache;
+
+  // the number of the latest release of nodes, NO_RELEASE for nodes without one
+  private Cache<String, Long> latestReleaseNrs;
+
+  @PostConstruct
+  public void init() {
+    logCache =
+        CacheBuilder.newBuilder()
+            .maximumWeight(logCacheMaxBytes)
+            .<String, TreeNodeLog>weigher((key, entry) -> getCachedWeight(entry))
+            .expireAfterWrite(logCacheTtlSeconds, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+    GuavaCacheMetrics.monitor(meterRegistry, logCache, "treenode.logCache");
+    latestReleaseNrs =
+        CacheBuilder.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(latestReleaseTtlSeconds, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+    GuavaCacheMetrics.monitor(meterRegistry, latestReleaseNrs, "treenode.latestReleaseCache");
+  }
+
+  /**
+   * Leave out the content, whether it's stored in full, as a delta or as the hash of a blob or
+   * file.
+   */
+  private static void excludeContent(Field fields) {
+    for (String field : ContentStore.CONTENT_FIELDS) {
+      fields.exclude(field);
+    }
+    fields.exclude("contentDelta");
+  }
 
   private Query queryReleasesByNode(String baseNodeId, boolean sparse) {
     Query releaseQuery =
@@ -27,21 +124,24 @@ public class TreeNodeLogRepositoryImpl implements TreeNodeLogRepositoryCustom {
                     .andOperator(Criteria.where("releaseNr").exists(true)))
             .with(Sort.by(Sort.Direction.DESC, "releaseNr"));
     if (sparse) {
-      releaseQuery.fields().exclude("content");
+      excludeContent(releaseQuery.fields());
     }
     return releaseQuery;
   }
 
   private Query queryVersionsByNode(String baseNodeId, boolean sparse) {
+    // replaced versions are only kept as long as other versions are encoded against them
     Query versionQuery =
         new Query(
                 Criteria.where("baseNodeId")
                     .is(baseNodeId)
-                    .andOperator(Criteria.where("releaseNr").exists(false)))
+                    .andOperator(
+                        Criteria.where("releaseNr").exists(false),
+                        Criteria.where("replaced").ne(true)))
             .with(Sort.by(Sort.Direction.DESC, "version"));
 
     if (sparse) {
-      versionQuery.fields().exclude("content");
+      excludeContent(versionQuery.fields());
     }
     return versionQuery;
   }
@@ -58,6 +158,10 @@ public class TreeNodeLogRepositoryImpl implements TreeNodeLogRepositoryCustom {
       return false;
     }
 
+    if (old.getLogDate() == null) {
+      // written along with the update
+      return true;
+    }
     ZonedDateTime oldTime =
         ZonedDateTime.ofInstant(
             old.getLogDate().toInstant(), ZoneId.of(Constants.TIMESTAMP_TIME_ZONE));
@@ -72,17 +176,6 @@ public class TreeNodeLogRepositoryImpl implements TreeNodeLogRepositoryCustom {
     return operations.find(queryReleasesByNode(baseNodeId, sparse), TreeNodeLog.class);
   }
 
-  public List<String> findDependentBaseNodeReleaseIds(String referringNodeId) {
-    Query releaseQuery =
-        new Query(
-                Criteria.where("processDependencies")
-                    .all(referringNodeId)
-                    .andOperator(Criteria.where("releaseNr").exists(true)))
-            .with(Sort.by(Sort.Direction.DESC, "releaseNr"));
-    releaseQuery.fields().exclude("content");
-    return operations.findDistinct(releaseQuery, "baseNodeId", TreeNodeLog.class, String.class);
-  }
-
   @Override
   public TreeNodeLog findVersion(String baseNodeId, Long versionNr, boolean sparse) {
     Query releaseQuery =
@@ -91,15 +184,22 @@ public class TreeNodeLogRepositoryImpl implements TreeNodeLogRepositoryCustom {
                 .is(baseNodeId)
                 .andOperator(
                     Criteria.where("version").is(versionNr),
-                    Criteria.where("releaseNr").exists(false)));
+                    Criteria.where("releaseNr").exists(false),
+                    Criteria.where("replaced").ne(true)));
     if (sparse) {
-      releaseQuery.fields().exclude("content");
+      excludeContent(releaseQuery.fields());
     }
-    return operations.findOne(releaseQuery, TreeNodeLog.class);
+    return getCached(
+        CombinedId.genVersion(baseNodeId, versionNr),
+        sparse,
+        () -> decodeContent(operations.findOne(releaseQuery, TreeNodeLog.class), sparse));
   }
 
   public List<TreeNodeLog> findVersions(String baseNodeId, boolean sparse) {
-    return operations.find(queryVersionsByNode(baseNodeId, sparse), TreeNodeLog.class);
+    List<TreeNodeLog> versions =
+        operations.find(queryVersionsByNode(baseNodeId, sparse), TreeNodeLog.class);
+    versions.forEach(version -> decodeContent(version, sparse));
+    return versions;
   }
 
   @Override
@@ -110,69 +210,634 @@ public class TreeNodeLogRepositoryImpl implements TreeNodeLogRepositoryCustom {
                 .is(baseNodeId)
                 .andOperator(Criteria.where("releaseNr").is(releaseNr)));
     if (sparse) {
-      releaseQuery.fields().exclude("content");
+      excludeContent(releaseQuery.fields());
+    }
+    return getCached(
+        CombinedId.genRelease(baseNodeId, releaseNr),
+        sparse,
+        () -> operations.findOne(releaseQuery, TreeNodeLog.class));
+  }
+
+  private static String getCacheKey(String combinedId, boolean sparse) {
+    return sparse ? combinedId + " sparse" : combinedId;
+  }
+
+  /**
+   * Get a release or version from the cache, or read and cache it. A sparse entry is also served
+   * from the full one.
+   *
+   * @return A copy of the cached entry, so callers may change it. null if there is no such entry,
+   *     which isn't cached.
+   */
+  @Nullable
+  private TreeNodeLog getCached(String combinedId, boolean sparse, Supplier<TreeNodeLog> reader) {
+    String cacheKey = getCacheKey(combinedId, sparse);
+    TreeNodeLog cached = logCache.getIfPresent(cacheKey);
+    if (cached == null && sparse) {
+      cached = logCache.getIfPresent(getCacheKey(combinedId, false));
+    }
+    if (cached == null) {
+      cached = reader.get();
+      if (cached == null) {
+        return null;
+      }
+      cached = copy(cached, !sparse);
+      logCache.put(cacheKey, cached);
+    }
+    return copy(cached, !sparse);
+  }
+
+  private static TreeNodeLog copy(TreeNodeLog entry, boolean withContent) {
+    TreeNodeLog copy = new TreeNodeLog();
+    BeanUtils.copyProperties(entry, copy, "content", "acl");
+    if (withContent && entry.getContent() != null) {
+      copy.setContent(PatchOps.copyContent(entry.getContent()));
     }
-    return operations.findOne(releaseQuery, TreeNodeLog.class);
+    if (entry.getAcl() != null) {
+      copy.setAcl(new ArrayList<>(entry.getAcl()));
+    }
+    return copy;
+  }
+
+  private int getCachedWeight(TreeNodeLog entry) {
+    return (int) Math.min(Integer.MAX_VALUE, CACHED_ENTRY_WEIGHT + getBsonSize(entry.getContent()));
+  }
+
+  private void evict(String baseNodeId, @Nullable Long releaseNr, @Nullable Long versionNr) {
+    String combinedId =
+        releaseNr != null
+            ? CombinedId.genRelease(baseNodeId, releaseNr)
+            : CombinedId.genVersion(baseNodeId, versionNr);
+    logCache.invalidate(getCacheKey(combinedId, false));
+    logCache.invalidate(getCacheKey(combinedId, true));
   }
 
   @Override
   public TreeNodeLog findLogEntry(String releaseId, boolean sparse) {
     Query releaseQuery = new Query(Criteria.where("_id").is(releaseId));
     if (sparse) {
-      releaseQuery.fields().exclude("content");
+      excludeContent(releaseQuery.fields());
     }
-    return operations.findOne(releaseQuery, TreeNodeLog.class);
+    return decodeContent(operations.findOne(releaseQuery, TreeNodeLog.class), sparse);
+  }
+
+  @Override
+  @Nullable
+  public TreeNodeLog findLogEntryVersion(CombinedId combinedId) {
+    Criteria entryCriteria = Criteria.where("baseNodeId").is(combinedId.getNodeId());
+    if (combinedId.isRelease()) {
+      entryCriteria.and("releaseNr").is(combinedId.getReleaseNr());
+    } else {
+      entryCriteria
+          .and("version")
+          .is(combinedId.getVersionId())
+          .and("releaseNr")
+          .exists(false)
+          .and("replaced")
+          .ne(true);
+    }
+    Query entryQuery = new Query(entryCriteria);
+    for (String field : LOG_ENTRY_VERSION_FIELDS) {
+      entryQuery.fields().include(field);
+    }
+    return operations.findOne(entryQuery, TreeNodeLog.class);
   }
 
   @Override
   public void updateLogComment(String logEntryId, String comment) {
     Query logQuery = new Query(Criteria.where("_id").is(logEntryId));
-    // fixme: this is prob not necessary
-    logQuery.fields().exclude("content");
+    // only what's needed to evict the entry from the cache
+    logQuery.fields().include("baseNodeId").include("releaseNr").include("version");
     Update descriptionUpdate = new Update().set("logComment", comment);
-    UpdateResult ur = operations.updateFirst(logQuery, descriptionUpdate, TreeNodeLog.class);
-    if (ur.getMatchedCount() != 1) {
+    TreeNodeLog logEntry = operations.findAndModify(logQuery, descriptionUpdate, TreeNodeLog.class);
+    if (logEntry == null) {
       throw new RuntimeException("couldn't find log entry");
     }
+    evict(logEntry.getBaseNodeId(), logEntry.getReleaseNr(), logEntry.getVersion());
   }
 
   public void renameReleases(String baseNodeId, String name) {
     Query releaseQuery = this.queryReleasesByNode(baseNodeId, true);
     Update nameUpdate = new Update().set("name", name);
     operations.updateFirst(releaseQuery, nameUpdate, TreeNodeLog.class);
+    String releasePrefix = baseNodeId + "@r";
+    logCache.asMap().keySet().removeIf(key -> key.startsWith(releasePrefix));
   }
 
   @Override
   public TreeNodeLog findLatestRelease(String baseNodeId, boolean sparse) {
-    return operations.findOne(queryReleasesByNode(baseNodeId, sparse), TreeNodeLog.class);
+    Long latestReleaseNr = latestReleaseNrs.getIfPresent(baseNodeId);
+    if (latestReleaseNr != null && latestReleaseNr == NO_RELEASE) {
+      return null;
+    }
+    if (latestReleaseNr != null) {
+      TreeNodeLog release = findRelease(baseNodeId, latestReleaseNr, sparse);
+      if (release != null) {
+        return release;
+      }
+    }
+    TreeNodeLog release =
+        operations.findOne(queryReleasesByNode(baseNodeId, sparse), TreeNodeLog.class);
+    // a release made meanwhile must not be replaced by an older one
+    latestReleaseNrs
+        .asMap()
+        .merge(baseNodeId, release != null ? release.getReleaseNr() : NO_RELEASE, Math::max);
+    if (release != null) {
+      String releaseId = CombinedId.genRelease(baseNodeId, release.getReleaseNr());
+      logCache.put(getCacheKey(releaseId, sparse), copy(release, !sparse));
+    }
+    return release;
+  }
+
+  private ProjectionOperation getDependenciesProjection() {
+    return project("baseNodeId", "releaseNr", "type", "processDependencies");
+  }
+
+  @Override
+  public Map<String, TreeNodeLog> findLatestReleases(
+      Collection<String> baseNodeIds, boolean sparse) {
+    return findLatestReleases(
+        baseNodeIds, sparse ? project().andExclude(ContentStore.CONTENT_FIELDS) : null);
+  }
+
+  @Override
+  public Map<String, TreeNodeLog> findLatestReleaseDependencies(Collection<String> baseNodeIds) {
+    return findLatestReleases(baseNodeIds, getDependenciesProjection());
+  }
+
+  private Map<String, TreeNodeLog> findLatestReleases(
+      Collection<String> baseNodeIds, @Nullable ProjectionOperation projection) {
+    if (baseNodeIds.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    List<AggregationOperation> pipeline = new ArrayList<>();
+    pipeline.add(
+        match(Criteria.where("baseNodeId").in(baseNodeIds).and("releaseNr").exists(true)));
+    if (projection != null) {
+      pipeline.add(projection);
+    }
+    pipeline.add(sort(Sort.Direction.DESC, "releaseNr"));
+    pipeline.add(group("baseNodeId").first(ROOT).as("latestRelease"));
+    pipeline.add(replaceRoot("latestRelease"));
+    AggregationResults<TreeNodeLog> results =
+        operations.aggregate(newAggregation(TreeNodeLog.class, pipeline), TreeNodeLog.class);
+    return results
+        .getMappedResults()
+        .stream()
+        .collect(Collectors.toMap(TreeNodeLog::getBaseNodeId, Function.identity()));
+  }
+
+  @Override
+  public List<TreeNodeLog> findReleaseDependencies(Map<String, Set<Long>> releaseNrsByBaseNodeId) {
+    if (releaseNrsByBaseNodeId.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<Criteria> releaseCriteria = new ArrayList<>();
+    releaseNrsByBaseNodeId.forEach(
+        (baseNodeId, releaseNrs) ->
+            releaseCriteria.add(
+                Criteria.where("baseNodeId").is(baseNodeId).and("releaseNr").in(releaseNrs)));
+    AggregationResults<TreeNodeLog> results =
+        operations.aggregate(
+            newAggregation(
+                TreeNodeLog.class,
+                match(new Criteria().orOperator(releaseCriteria.toArray(new Criteria[0]))),
+                getDependenciesProjection()),
+            TreeNodeLog.class);
+    return results.getMappedResults();
   }
 
   @Override
   public TreeNodeLog findLatestVersion(String baseNodeId, boolean sparse) {
-    return operations.findOne(queryVersionsByNode(baseNodeId, sparse), TreeNodeLog.class);
+    return decodeContent(
+        operations.findOne(queryVersionsByNode(baseNodeId, sparse), TreeNodeLog.class), sparse);
   }
 
   @Override
   public TreeNodeLog insertRelease(TreeNodeLog release) {
 
-    TreeNodeLog lastRelease = this.findLatestRelease(release.getBaseNodeId(), true);
+    // not from the cache, which may be behind releases made by other instances
+    TreeNodeLog lastRelease =
+        operations.findOne(queryReleasesByNode(release.getBaseNodeId(), true), TreeNodeLog.class);
     Long releaseNr =
         lastRelease != null && lastRelease.getReleaseNr() != null
             ? lastRelease.getReleaseNr() + 1
             : 1;
     release.setReleaseNr(releaseNr);
-    return operations.save(release);
+    TreeNodeLog savedRelease = operations.save(release);
+    latestReleaseNrs.asMap().merge(release.getBaseNodeId(), releaseNr, Math::max);
+    return savedRelease;
+  }
+
+  private Map<String, TreeNodeLog> findLatestVersions(Collection<String> baseNodeIds) {
+    AggregationResults<TreeNodeLog> results =
+        operations.aggregate(
+            newAggregation(
+                TreeNodeLog.class,
+                match(Criteria.where("baseNodeId").in(baseNodeIds).and("releaseNr").exists(false)),
+                project().andExclude(ContentStore.CONTENT_FIELDS).andExclude("contentDelta"),
+                sort(Sort.Direction.DESC, "version"),
+                group("baseNodeId").first(ROOT).as("latestVersion"),
+                replaceRoot("latestVersion")),
+            TreeNodeLog.class);
+    return results
+        .getMappedResults()
+        .stream()
+        .collect(Collectors.toMap(TreeNodeLog::getBaseNodeId, Function.identity()));
   }
 
   @Override
   public TreeNodeLog insertVersion(TreeNodeLog version) {
+    insertVersions(Collections.singletonList(version));
+    return version;
+  }
+
+  @Override
+  public void insertVersions(List<TreeNodeLog> versions) {
+    if (versions.isEmpty()) {
+      return;
+    }
+    Map<String, TreeNodeLog> latestVersions =
+        findLatestVersions(
+            versions.stream().map(TreeNodeLog::getBaseNodeId).collect(Collectors.toSet()));
+    // versions may replace each other within the batch as well
+    Map<String, TreeNodeLog> insertedVersions = new LinkedHashMap<>();
+    List<TreeNodeLog> redundantVersions = new ArrayList<>();
+    // the full content of the versions in the batch, and what they are encoded against
+    Map<String, Map<String, Object>> batchContents = new HashMap<>();
+    Map<String, DeltaBase> batchDeltaBases = new HashMap<>();
+    for (TreeNodeLog givenVersion : versions) {
+      // encoded on a copy, so the given versions can be inserted again if the insert fails
+      TreeNodeLog version = copy(givenVersion, false);
+      version.setContent(givenVersion.getContent());
+      TreeNodeLog latestVersion = latestVersions.get(version.getBaseNodeId());
+      DeltaBase deltaBase = null;
+      if (latestVersion != null && isRedundant(latestVersion, version)) {
+        // takes the place of the latest version, so it's encoded against the same version
+        deltaBase =
+            batchDeltaBases.containsKey(latestVersion.getId())
+                ? batchDeltaBases.get(latestVersion.getId())
+                : getStoredDeltaBase(latestVersion);
+        if (insertedVersions.remove(latestVersion.getId()) == null) {
+          redundantVersions.add(latestVersion);
+          evict(latestVersion.getBaseNodeId(), null, latestVersion.getVersion());
+        }
+      } else if (latestVersion != null) {
+        deltaBase =
+            batchContents.containsKey(latestVersion.getId())
+                ? new DeltaBase(latestVersion, batchContents.get(latestVersion.getId()))
+                : new DeltaBase(latestVersion, getStoredContent(latestVersion.getId()));
+      }
+      batchContents.put(version.getId(), version.getContent());
+      batchDeltaBases.put(version.getId(), deltaBase);
+      encodeContent(version, deltaBase);
+      insertedVersions.put(version.getId(), version);
+      latestVersions.put(version.getBaseNodeId(), version);
+    }
+    if (!redundantVersions.isEmpty()) {
+      removeRedundantVersions(redundantVersions);
+    }
+    operations.insert(insertedVersions.values(), TreeNodeLog.class);
+    Map<String, TreeNodeLog> givenVersions =
+        versions.stream().collect(Collectors.toMap(TreeNodeLog::getId, Function.identity()));
+    storeFullWithoutDeltaBase(insertedVersions.values(), givenVersions);
+  }
+
+  /**
+   * Remove versions which newer versions take the place of. Other instances may encode versions
+   * against them at the same time, so they are marked as replaced first and versions which are
+   * encoded against them by then keep them. Versions encoded against them later notice the mark,
+   * see {@link #storeFullWithoutDeltaBase(Collection, Map)}. Replaced versions are left out of
+   * the versions of a node, they are only read to restore the content of other versions.
+   */
+  private void removeRedundantVersions(List<TreeNodeLog> redundantVersions) {
+    List<String> redundantIds =
+        redundantVersions.stream().map(TreeNodeLog::getId).collect(Collectors.toList());
+    operations.updateMulti(
+        new Query(Criteria.where("_id").in(redundantIds)),
+        new Update().set("replaced", true),
+        TreeNodeLog.class);
+    removeReplacedVersions(redundantVersions);
+  }
+
+  /**
+   * Remove the given versions if they have been replaced and no stored version is encoded against
+   * them anymore, and then the replaced versions those were encoded against in turn.
+   *
+   * @param versions The versions, only their base node id and version number are needed.
+   */
+  private void removeReplacedVersions(List<TreeNodeLog> versions) {
+    List<TreeNodeLog> candidates = versions;
+    while (!candidates.isEmpty()) {
+      List<TreeNodeLog> replaced =
+          findVersionsOfNodes(
+              candidates, TreeNodeLog::getVersion, "version", Criteria.where("replaced").is(true));
+      if (replaced.isEmpty()) {
+        return;
+      }
+      Set<String> deltaBases =
+          findVersionsOfNodes(replaced, TreeNodeLog::getVersion, "deltaBaseVersion", null)
+              .stream()
+              .map(
+                  version ->
+                      CombinedId.genVersion(version.getBaseNodeId(), version.getDeltaBaseVersion()))
+              .collect(Collectors.toSet());
+      List<TreeNodeLog> removable =
+          replaced
+              .stream()
+              .filter(
+                  version ->
+                      !deltaBases.contains(
+                          CombinedId.genVersion(version.getBaseNodeId(), version.getVersion())))
+              .collect(Collectors.toList());
+      if (removable.isEmpty()) {
+        return;
+      }
+      List<String> removableIds =
+          removable.stream().map(TreeNodeLog::getId).collect(Collectors.toList());
+      operations.remove(
+          new Query(Criteria.where("_id").in(removableIds).and("replaced").is(true)),
+          TreeNodeLog.class);
+      candidates = getDeltaBases(removable);
+    }
+  }
+
+  /** @return The versions the given versions are encoded against, with only their numbers. */
+  private static List<TreeNodeLog> getDeltaBases(Collection<TreeNodeLog> versions) {
+    return versions
+        .stream()
+        .filter(version -> version.getDeltaBaseVersion() != null)
+        .map(
+            version -> {
+              TreeNodeLog deltaBase = new TreeNodeLog();
+              deltaBase.setBaseNodeId(version.getBaseNodeId());
+              deltaBase.setVersion(version.getDeltaBaseVersion());
+              return deltaBase;
+            })
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Store the full content of inserted versions whose delta base has been replaced or removed by
+   * another instance in the meantime, which would leave the delta without a base. Replaced bases
+   * are removed once nothing is encoded against them anymore.
+   *
+   * @param insertedVersions The versions as inserted.
+   * @param givenVersions The versions as given, with their full content, by id.
+   */
+  private void storeFullWithoutDeltaBase(
+      Collection<TreeNodeLog> insertedVersions, Map<String, TreeNodeLog> givenVersions) {
+    List<TreeNodeLog> deltas =
+        insertedVersions
+            .stream()
+            .filter(version -> version.getDeltaBaseVersion() != null)
+            .collect(Collectors.toList());
+    if (deltas.isEmpty()) {
+      return;
+    }
+    Set<String> keptBases =
+        findVersionsOfNodes(
+                deltas,
+                TreeNodeLog::getDeltaBaseVersion,
+                "version",
+                Criteria.where("replaced").ne(true))
+            .stream()
+            .map(version -> CombinedId.genVersion(version.getBaseNodeId(), version.getVersion()))
+            .collect(Collectors.toSet());
+    List<TreeNodeLog> storedFull = new ArrayList<>();
+    for (TreeNodeLog delta : deltas) {
+      if (!keptBases.contains(
+          CombinedId.genVersion(delta.getBaseNodeId(), delta.getDeltaBaseVersion()))) {
+        TreeNodeLog givenVersion = givenVersions.get(delta.getId());
+        TreeNodeLog full = copy(givenVersion, false);
+        full.setContent(givenVersion.getContent());
+        full.setDeltaDepth(0);
+        operations.save(full);
+        evict(full.getBaseNodeId(), null, full.getVersion());
+        storedFull.add(delta);
+      }
+    }
+    removeReplacedVersions(getDeltaBases(storedFull));
+  }
+
+  /**
+   * Find versions of the nodes of the given versions whose field matches one of their version
+   * numbers, with only their version numbers and the base node id.
+   *
+   * @param versionNr The version number of a given version to match.
+   * @param criteria What else the versions have to match, if anything.
+   */
+  private List<TreeNodeLog> findVersionsOfNodes(
+      List<TreeNodeLog> versions,
+      Function<TreeNodeLog, Long> versionNr,
+      String field,
+      @Nullable Criteria criteria) {
+    Map<String, Set<Long>> versionNrsByBaseNodeId =
+        versions
+            .stream()
+            .collect(
+                Collectors.groupingBy(
+                    TreeNodeLog::getBaseNodeId, Collectors.mapping(versionNr, Collectors.toSet())));
+    List<Criteria> versionCriteria = new ArrayList<>();
+    versionNrsByBaseNodeId.forEach(
+        (baseNodeId, versionNrs) ->
+            versionCriteria.add(
+                Criteria.where("baseNodeId").is(baseNodeId).and(field).in(versionNrs)));
+    Criteria versionsCriteria =
+        new Criteria()
+            .orOperator(versionCriteria.toArray(new Criteria[0]))
+            .and("releaseNr")
+            .exists(false);
+    Query query =
+        new Query(
+            criteria != null
+                ? new Criteria().andOperator(versionsCriteria, criteria)
+                : versionsCriteria);
+    query.fields().include("baseNodeId").include("version").include("deltaBaseVersion");
+    return operations.find(query, TreeNodeLog.class);
+  }
 
-    TreeNodeLog lastVersion = this.findLatestVersion(version.getBaseNodeId(), true);
-    if (lastVersion != null && isRedundant(lastVersion, version)) {
-      operations.remove(lastVersion);
+  @Override
+  public List<String> findStoredIds(Collection<String> logEntryIds) {
+    return operations.findDistinct(
+        new Query(Criteria.where("_id").in(logEntryIds)), "_id", TreeNodeLog.class, String.class);
+  }
+
+  /** A version that another version is encoded against. */
+  @RequiredArgsConstructor
+  private static class DeltaBase {
+    private final TreeNodeLog version;
+    @Nullable private final Map<String, Object> content;
+  }
+
+  /**
+   * Get what a stored version has been encoded against.
+   *
+   * @param version The version, without its content.
+   * @return null if the version is stored in full.
+   */
+  @Nullable
+  private DeltaBase getStoredDeltaBase(TreeNodeLog version) {
+    if (version.getDeltaBaseVersion() == null) {
+      return null;
+    }
+    TreeNodeLog baseVersion =
+        operations.findOne(
+            new Query(
+                Criteria.where("baseNodeId")
+                    .is(version.getBaseNodeId())
+                    .and("version")
+                    .is(version.getDeltaBaseVersion())
+                    .and("releaseNr")
+                    .exists(false)),
+            TreeNodeLog.class);
+    return baseVersion != null ? new DeltaBase(baseVersion, reconstructContent(baseVersion)) : null;
+  }
+
+  @Nullable
+  private Map<String, Object> getStoredContent(String versionId) {
+    TreeNodeLog version = operations.findById(versionId, TreeNodeLog.class);
+    return version != null ? reconstructContent(version) : null;
+  }
+
+  /**
+   * Store the content of a version as a delta against the given version, unless that would make
+   * the chain of deltas back to the nearest full version too long.
+   */
+  private void encodeContent(TreeNodeLog version, @Nullable DeltaBase deltaBase) {
+    Map<String, Object> content = version.getContent();
+    long contentSize = getBsonSize(content);
+    int deltaDepth = deltaBase != null ? getDeltaDepth(deltaBase.version) + 1 : 0;
+    if (deltaBase == null
+        || deltaBase.content == null
+        || content == null
+        || deltaDepth >= snapshotInterval) {
+      version.setDeltaDepth(0);
+      recordStoredSize(version, "full", contentSize, contentSize);
+      return;
+    }
+    ContentDelta contentDelta = ContentDeltaOps.diff(deltaBase.content, content);
+    version.setContent(null);
+    version.setContentDelta(contentDelta);
+    version.setDeltaBaseVersion(deltaBase.version.getVersion());
+    version.setDeltaDepth(deltaDepth);
+    recordStoredSize(version, "delta", contentSize, getBsonSize(contentDelta));
+  }
+
+  /**
+   * Restore the content of a version stored as a delta and drop the delta.
+   *
+   * @return The version.
+   */
+  @Nullable
+  private TreeNodeLog decodeContent(@Nullable TreeNodeLog version, boolean sparse) {
+    if (version != null && version.getContentDelta() != null) {
+      if (!sparse) {
+        version.setContent(reconstructContent(version));
+      }
+      version.setContentDelta(null);
     }
+    return version;
+  }
+
+  /**
+   * Replay the deltas from the nearest full version up to a version.
+   *
+   * @param version The version, with its content or delta.
+   * @return The content of the version.
+   */
+  @Nullable
+  private Map<String, Object> reconstructContent(TreeNodeLog version) {
+    if (version.getContentDelta() == null) {
+      return version.getContent();
+    }
+    Timer.Sample reconstruction = Timer.start(meterRegistry);
+    // the versions a delta is encoded against are usually the ones stored right before it
+    Query previousVersionsQuery =
+        new Query(
+                Criteria.where("baseNodeId")
+                    .is(version.getBaseNodeId())
+                    .and("releaseNr")
+                    .exists(false)
+                    .and("version")
+                    .lt(version.getVersion()))
+            .with(Sort.by(Sort.Direction.DESC, "version"))
+            .limit(getDeltaDepth(version));
+    Map<Long, TreeNodeLog> previousVersions =
+        operations
+            .find(previousVersionsQuery, TreeNodeLog.class)
+            .stream()
+            .collect(Collectors.toMap(TreeNodeLog::getVersion, Function.identity(), (a, b) -> a));
+    Deque<ContentDelta> contentDeltas = new ArrayDeque<>();
+    TreeNodeLog current = version;
+    while (current.getContentDelta() != null) {
+      contentDeltas.push(current.getContentDelta());
+      Long deltaBaseVersion = current.getDeltaBaseVersion();
+      current = previousVersions.get(deltaBaseVersion);
+      if (current == null) {
+        // versions written by several instances at the same time may be encoded against the same
+        // version, so the one encoded against may be further back
+        current =
+            operations.findOne(
+                new Query(
+                    Criteria.where("baseNodeId")
+                        .is(version.getBaseNodeId())
+                        .and("version")
+                        .is(deltaBaseVersion)
+                        .and("releaseNr")
+                        .exists(false)),
+                TreeNodeLog.class);
+      }
+      if (current == null) {
+        throw new IllegalStateException(
+            "versions of node "
+                + version.getBaseNodeId()
+                + " needed to restore the content of version "
+                + version.getVersion()
+                + " are missing");
+      }
+    }
+    Map<String, Object> content =
+        current.getContent() != null ? current.getContent() : new LinkedHashMap<>();
+    while (!contentDeltas.isEmpty()) {
+      content = ContentDeltaOps.apply(content, contentDeltas.pop());
+    }
+    reconstruction.stop(
+        Timer.builder("treenode.versionLog.reconstruction")
+            .description("time to restore the content of versions stored as a delta")
+            .tag("type", String.valueOf(version.getType()))
+            .register(meterRegistry));
+    return content;
+  }
+
+  private int getDeltaDepth(TreeNodeLog version) {
+    return version.getDeltaDepth() != null ? version.getDeltaDepth() : 0;
+  }
+
+  private long getBsonSize(@Nullable Object value) {
+    Object converted = value != null ? operations.getConverter().convertToMongoType(value) : null;
+    if (!(converted instanceof Document)) {
+      return 0;
+    }
+    return new RawBsonDocument((Document) converted, DOCUMENT_CODEC).getByteBuffer().remaining();
+  }
 
-    return operations.save(version);
+  private void recordStoredSize(
+      TreeNodeLog version, String encoding, long contentSize, long storedSize) {
+    String type = String.valueOf(version.getType());
+    DistributionSummary.builder("treenode.versionLog.contentSize")
+        .description("size of the content of versions")
+        .baseUnit("bytes")
+        .tag("type", type)
+        .register(meterRegistry)
+        .record(contentSize);
+    DistributionSummary.builder("treenode.versionLog.storedSize")
+        .description("size of what's stored for the content of versions, in full or as a delta")
+        .baseUnit("bytes")
+        .tag("type", type)
+        .tag("encoding", encoding)
+        .register(meterRegistry)
+        .record(storedSize);
   }
 
   @Override
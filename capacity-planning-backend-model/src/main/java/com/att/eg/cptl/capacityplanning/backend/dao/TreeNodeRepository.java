@@ -40,10 +40,4 @@ public interface TreeNodeRepository
    */
   @Query(value = "{'type': ?0}")
   List<TreeNode> findAllByType(String type);
-
-  @Query(value = "{'processDependencies': ?0}")
-  List<TreeNode> findDependentNodes(String nodeId);
-
-  @Query(value = "{'type': ?0, 'processDependencies': ?1}")
-  List<TreeNode> findDependentNodesByType(String type, String nodeId);
 }
@@ -1,21 +1,27 @@
 package com.att.eg.cptl.capacityplanning.backend.dao;
 
 import com.att.eg.cptl.capacityplanning.backend.model.ObjectVersion;
+import com.att.eg.cptl.capacityplanning.backend.model.auth.AccessPrincipal;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.AggregatedAccessControlInformation;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.NodeType;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNode;
 import com.mongodb.client.result.UpdateResult;
+import java.time.ZonedDateTime;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.lang.Nullable;
 
 public interface TreeNodeRepositoryCustom {
   enum ProjectionType {
     SPARSE,
     PID,
-    FULL
+    FULL,
+    // only what's needed to work out deep dependencies
+    DEPENDENCIES
   };
 
   List<TreeNode> getNodes(ProjectionType pt, Collection<String> nodeIds);
@@ -27,6 +33,14 @@ public interface TreeNodeRepositoryCustom {
 
   List<TreeNode> getChildren(TreeNode node);
 
+  /**
+   * Get the children of a node which the principal may read. Nodes inheriting their access control
+   * which don't carry their effective access control yet can't be decided by the database and are
+   * always included.
+   */
+  List<TreeNode> getChildren(
+      String parentId, int parentLevel, boolean sparse, AccessPrincipal principal);
+
   ObjectVersion<TreeNode> saveIfNoConflict(
       TreeNode object, String newComment, String userId, Long versionNumberToSave);
 
@@ -40,19 +54,133 @@ public interface TreeNodeRepositoryCustom {
 
   void restore(String id);
 
+  /**
+   * Get the ids of a node and all of its descendants.
+   *
+   * @param nodeId The id of the node at the top of the subtree.
+   * @param trashed Only return trashed nodes if true, only nodes which aren't trashed if false and
+   *     all nodes if null.
+   */
+  List<String> getSubtreeIds(String nodeId, @Nullable Boolean trashed);
+
+  /**
+   * Trash a node and all of its descendants which aren't trashed yet in a single update.
+   *
+   * @return The number of trashed nodes.
+   */
+  long trashSubtree(String nodeId, ZonedDateTime trashedDate);
+
+  /**
+   * Restore a node and all of its trashed descendants. Descendants which were trashed on their own
+   * and whose name has been taken by a sibling since stay in the trash.
+   *
+   * @return The ids of the descendants which stayed in the trash.
+   * @throws org.springframework.dao.DuplicateKeyException if the name of the node itself has been
+   *     taken, in which case nothing is restored.
+   */
+  List<String> restoreSubtree(String nodeId);
+
+  /**
+   * Get the names of the children of a node which aren't trashed and start with the given prefix.
+   */
+  List<String> getChildNames(String parentId, String namePrefix);
+
+  /**
+   * Permanently delete a node and all of its descendants, including trashed ones.
+   *
+   * @return The number of deleted nodes.
+   */
+  long removeSubtree(String nodeId);
+
   ObjectVersion<TreeNode> save(TreeNode node, String comment, String userId);
 
   UpdateResult update(String nodeId, Long version, Update update);
 
+  /**
+   * Update the content of a node in place, if it's still at the given version and its content is
+   * stored with the node as it is, rather than in a blob or file of the {@link ContentStore} or
+   * compressed.
+   *
+   * @return The result of the update, which matched nothing if either isn't the case.
+   */
+  UpdateResult updateInlineContent(String nodeId, Long version, Update update);
+
+  /**
+   * Write a node, if it's still at the version it carries, and get it back as stored afterwards.
+   *
+   * @param node The node to write.
+   * @param withContent false to leave the stored content as it is.
+   * @return The node after the update, without its content. null if the node wasn't at its version.
+   */
+  @Nullable
+  TreeNode updateNode(TreeNode node, boolean withContent);
+
+  /**
+   * Move a node, if it's still at the given version, and all of its descendants, including trashed
+   * ones, below new ancestors. Runs in a transaction if the deployment supports them.
+   *
+   * @param nodeId The id of the node to move.
+   * @param version The version the node is expected to be at.
+   * @param level The number of ancestors the node had before the move.
+   * @param newAncestors The ancestors of the node after the move.
+   * @param effectiveAccessControl The effective access control of the node after the move.
+   * @return The number of moved nodes, the node itself included. 0 if the node wasn't at the given
+   *     version, in which case nothing has been moved.
+   */
+  long moveSubtree(
+      String nodeId,
+      Long version,
+      int level,
+      List<String> newAncestors,
+      @Nullable AggregatedAccessControlInformation effectiveAccessControl);
+
   void save(List<TreeNode> nodes, String comment, String userId);
 
   TreeNode getNode(String nodeId, boolean sparse);
 
+  /**
+   * Get a node with only what's needed to tell whether it has changed and who may read it: its
+   * version, its trash state, its place in the tree and its access control.
+   */
+  @Nullable
+  TreeNode getNodeVersion(String nodeId);
+
   List<TreeNode> getAll(ProjectionType pt, @Nullable Date updatedAfter, NodeType... nodeTypes);
 
+  List<TreeNode> getAll(
+      ProjectionType pt,
+      @Nullable Date updatedAfter,
+      AccessPrincipal principal,
+      NodeType... nodeTypes);
+
   List<TreeNode> searchNode(
       @Nullable String searchTerm,
       Collection<String> folderIds,
       Pageable pageable,
-      List<NodeType> nodeTypes);
+      List<NodeType> nodeTypes,
+      AccessPrincipal principal);
+
+  /**
+   * Get all descendants of a node, including trashed ones, with only the fields required to work
+   * out their access control.
+   */
+  List<TreeNode> getAccessControlledDescendants(String nodeId);
+
+  /**
+   * Stream the nodes which don't carry their effective access control yet, with only the fields
+   * required to work it out.
+   */
+  CloseableIterator<TreeNode> streamWithoutEffectiveAccessControl();
+
+  UpdateResult setEffectiveAccessControl(
+      Collection<String> nodeIds, AggregatedAccessControlInformation effectiveAccessControl);
+
+  /**
+   * Replace the effective access control of all descendants of a node which currently take it from
+   * the given source node.
+   */
+  UpdateResult replaceEffectiveAccessControl(
+      String ancestorId,
+      String sourceNodeId,
+      AggregatedAccessControlInformation effectiveAccessControl);
 }
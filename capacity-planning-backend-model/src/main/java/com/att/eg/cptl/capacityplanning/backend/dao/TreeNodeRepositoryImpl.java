@@ -6,47 +6,89 @@ import static org.springframework.data.mongodb.core.aggregation.VariableOperator
 import static org.springframework.data.mongodb.core.query.Criteria.where;
 
 import com.att.eg.cptl.capacityplanning.backend.model.ObjectVersion;
+import com.att.eg.cptl.capacityplanning.backend.model.auth.AccessPrincipal;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.AccessControlType;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.AccessIdType;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.AggregatedAccessControlInformation;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.NodeType;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.Permission;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNode;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNodeAncestor;
+import com.mongodb.ClientSessionOptions;
+import com.mongodb.client.ClientSession;
 import com.mongodb.client.result.UpdateResult;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.core.aggregation.*;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.lang.Nullable;
 
 @RequiredArgsConstructor
 public class TreeNodeRepositoryImpl implements TreeNodeRepositoryCustom {
+  private static final String[] SPARSE_FIELDS = {
+    "id",
+    "version",
+    "type",
+    "description",
+    "ownerId",
+    "accessControl",
+    "acl",
+    "effectiveAccessControl",
+    "ancestors",
+    "parentId",
+    "trashed",
+    "trashedDate",
+    "processDependencies",
+    "name"
+  };
+
+  private static final String[] VERSION_FIELDS = {
+    "id",
+    "version",
+    "trashed",
+    "ownerId",
+    "accessControl",
+    "acl",
+    "effectiveAccessControl",
+    "ancestors",
+    "parentId"
+  };
+
+  private static final Pattern REGEX_SPECIAL_CHARACTERS =
+      Pattern.compile("[\\\\^$.|?*+()\\[\\]{}]");
+
   private final MongoOperations operations;
+  private final MongoDbFactory mongoDbFactory;
+  private final ContentStore contentStore;
+
+  /** What the deployment supports, determined on first use. */
+  private volatile ServerCapabilities serverCapabilities;
 
   private ProjectionOperation getTreeNodeProjection(boolean sparse) {
     return getTreeNodeProjection(sparse ? ProjectionType.SPARSE : ProjectionType.FULL);
   }
 
   private ProjectionOperation getTreeNodeProjection(ProjectionType ptype) {
-    ProjectionOperation sparseProject =
-        project(
-            "id",
-            "version",
-            "type",
-            "description",
-            "ownerId",
-            "accessControl",
-            "acl",
-            "ancestors",
-            "trashed",
-            "trashedDate",
-            "processDependencies",
-            "name");
+    ProjectionOperation sparseProject = project(SPARSE_FIELDS);
     switch (ptype) {
+      case DEPENDENCIES:
+        return project("id", "type", "processDependencies");
       default:
       case SPARSE:
         return sparseProject;
@@ -57,7 +99,7 @@ public class TreeNodeRepositoryImpl implements TreeNodeRepositoryCustom {
         // but this will break the spring persistence layer
         // fall through to FULL for now
       case FULL:
-        return sparseProject.andInclude("content");
+        return sparseProject.andInclude(ContentStore.CONTENT_FIELDS);
     }
   }
 
@@ -102,18 +144,38 @@ public class TreeNodeRepositoryImpl implements TreeNodeRepositoryCustom {
   @Override
   public List<TreeNode> getChildren(
       String parentId, int parentLevel, boolean sparse, boolean ignoreDepthLimit) {
-    int childLevel = parentLevel + 1;
-    Criteria depthLimit = where("ancestors").size(childLevel);
+    return getChildren(parentId, parentLevel, sparse, ignoreDepthLimit, null);
+  }
 
-    String arrayChildQuery = String.format("ancestors.%d", parentLevel);
-    Criteria isChild = where(arrayChildQuery).is(parentId);
+  @Override
+  public List<TreeNode> getChildren(
+      String parentId, int parentLevel, boolean sparse, AccessPrincipal principal) {
+    return getChildren(parentId, parentLevel, sparse, false, principal);
+  }
 
-    Criteria notTrashed = where("trashed").ne(true);
+  private List<TreeNode> getChildren(
+      String parentId,
+      int parentLevel,
+      boolean sparse,
+      boolean ignoreDepthLimit,
+      @Nullable AccessPrincipal principal) {
+    int childLevel = parentLevel + 1;
+    List<Criteria> childCriteria = new ArrayList<>();
+
+    // a node id can only ever show up at its own level in the ancestors of its descendants, so
+    // matching on the whole array is the same as matching ancestors.<parentLevel>, but can use
+    // the index on ancestors
+    childCriteria.add(where("ancestors").is(parentId));
+    childCriteria.add(where("trashed").ne(true));
+    if (!ignoreDepthLimit) {
+      childCriteria.add(where("ancestors").size(childLevel));
+    }
+    if (principal != null && !principal.isAdmin()) {
+      childCriteria.add(readableBy(principal));
+    }
 
     Criteria combinedChildCriteria =
-        ignoreDepthLimit
-            ? isChild.andOperator(notTrashed)
-            : isChild.andOperator(notTrashed, depthLimit);
+        new Criteria().andOperator(childCriteria.toArray(new Criteria[0]));
 
     AggregationResults<TreeNode> results =
         operations.aggregate(
@@ -172,7 +234,19 @@ public class TreeNodeRepositoryImpl implements TreeNodeRepositoryCustom {
   public TreeNode getNode(String nodeId, boolean sparse) {
     Query treeNodeQuery = new Query(Criteria.where("id").is(nodeId));
     if (sparse) {
-      treeNodeQuery.fields().exclude("content");
+      for (String field : ContentStore.CONTENT_FIELDS) {
+        treeNodeQuery.fields().exclude(field);
+      }
+    }
+    return operations.findOne(treeNodeQuery, TreeNode.class);
+  }
+
+  @Override
+  @Nullable
+  public TreeNode getNodeVersion(String nodeId) {
+    Query treeNodeQuery = new Query(where("id").is(nodeId));
+    for (String field : VERSION_FIELDS) {
+      treeNodeQuery.fields().include(field);
     }
     return operations.findOne(treeNodeQuery, TreeNode.class);
   }
@@ -197,6 +271,85 @@ public class TreeNodeRepositoryImpl implements TreeNodeRepositoryCustom {
     operations.updateFirst(treeNodeQuery, new Update().set("trashed", false), TreeNode.class);
   }
 
+  private Criteria inSubtree(String nodeId) {
+    return new Criteria().orOperator(where("id").is(nodeId), where("ancestors").is(nodeId));
+  }
+
+  @Override
+  public List<String> getSubtreeIds(String nodeId, @Nullable Boolean trashed) {
+    Query subtreeQuery = new Query(inSubtree(nodeId));
+    if (trashed != null) {
+      subtreeQuery.addCriteria(trashed ? where("trashed").is(true) : where("trashed").ne(true));
+    }
+    subtreeQuery.fields().include("id");
+    return operations
+        .find(subtreeQuery, TreeNode.class)
+        .stream()
+        .map(TreeNode::getId)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public long trashSubtree(String nodeId, ZonedDateTime trashedDate) {
+    Query subtreeQuery = new Query(inSubtree(nodeId)).addCriteria(where("trashed").ne(true));
+    return operations
+        .updateMulti(
+            subtreeQuery,
+            new Update().set("trashed", true).set("trashedDate", trashedDate),
+            TreeNode.class)
+        .getModifiedCount();
+  }
+
+  @Override
+  public List<String> restoreSubtree(String nodeId) {
+    Update restore = new Update().set("trashed", false);
+    // the node first, so nothing is restored if its name is taken
+    operations.updateFirst(
+        new Query(where("id").is(nodeId).and("trashed").is(true)), restore, TreeNode.class);
+    Query descendantsQuery = new Query(where("ancestors").is(nodeId).and("trashed").is(true));
+    try {
+      operations.updateMulti(descendantsQuery, restore, TreeNode.class);
+      return Collections.emptyList();
+    } catch (DuplicateKeyException e) {
+      // a descendant trashed on its own before has a sibling with its name now. restore the
+      // remaining ones one by one, leaving those in the trash
+      descendantsQuery.fields().include("id");
+      List<String> clashingNodeIds = new ArrayList<>();
+      for (TreeNode descendant : operations.find(descendantsQuery, TreeNode.class)) {
+        try {
+          operations.updateFirst(
+              new Query(where("id").is(descendant.getId())), restore, TreeNode.class);
+        } catch (DuplicateKeyException clash) {
+          clashingNodeIds.add(descendant.getId());
+        }
+      }
+      return clashingNodeIds;
+    }
+  }
+
+  @Override
+  public List<String> getChildNames(String parentId, String namePrefix) {
+    Query childNameQuery =
+        new Query(
+            where("parentId")
+                .is(parentId)
+                .and("trashed")
+                .is(false)
+                .and("name")
+                .regex("^" + REGEX_SPECIAL_CHARACTERS.matcher(namePrefix).replaceAll("\\\\$0")));
+    childNameQuery.fields().include("name");
+    return operations
+        .find(childNameQuery, TreeNode.class)
+        .stream()
+        .map(TreeNode::getName)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public long removeSubtree(String nodeId) {
+    return operations.remove(new Query(inSubtree(nodeId)), TreeNode.class).getDeletedCount();
+  }
+
   @Override
   public UpdateResult update(String nodeId, Long version, Update update) {
     Query treeNodeQuery =
@@ -204,6 +357,192 @@ public class TreeNodeRepositoryImpl implements TreeNodeRepositoryCustom {
     return operations.updateFirst(treeNodeQuery, update, TreeNode.class);
   }
 
+  @Override
+  public UpdateResult updateInlineContent(String nodeId, Long version, Update update) {
+    Query treeNodeQuery =
+        new Query(
+            where("id")
+                .is(nodeId)
+                .and("version")
+                .is(version)
+                .and(ContentStore.HASH_FIELD)
+                .exists(false)
+                .and(ContentStore.FILE_FIELD)
+                .exists(false)
+                .and("content")
+                .not()
+                .type(JsonSchemaObject.Type.BINARY_DATA));
+    return operations.updateFirst(treeNodeQuery, update, TreeNode.class);
+  }
+
+  @Override
+  @Nullable
+  public TreeNode updateNode(TreeNode node, boolean withContent) {
+    MongoConverter converter = operations.getConverter();
+    Document document = new Document();
+    converter.write(node, document);
+    Update update = new Update();
+    if (withContent) {
+      // the content store only sees saves, content written by an update has to be encoded here
+      contentStore.encode(document);
+      for (String field : ContentStore.STORAGE_FIELDS) {
+        if (document.containsKey(field)) {
+          update.set(field, document.get(field));
+        } else {
+          update.unset(field);
+        }
+      }
+    }
+    for (MongoPersistentProperty property :
+        converter.getMappingContext().getRequiredPersistentEntity(TreeNode.class)) {
+      String fieldName = property.getFieldName();
+      if (property.isIdProperty()
+          || property.isVersionProperty()
+          || "lastModifiedDate".equals(fieldName)
+          || (!withContent && "content".equals(fieldName))) {
+        continue;
+      }
+      // same as a save, fields which are null on the node are removed
+      if (document.containsKey(fieldName)) {
+        update.set(fieldName, document.get(fieldName));
+      } else {
+        update.unset(fieldName);
+      }
+    }
+    update.inc("version", 1).currentDate("lastModifiedDate");
+
+    Query treeNodeQuery =
+        new Query(where("id").is(node.getId()).andOperator(where("version").is(node.getVersion())));
+    for (String field : SPARSE_FIELDS) {
+      treeNodeQuery.fields().include(field);
+    }
+    return operations.findAndModify(
+        treeNodeQuery, update, FindAndModifyOptions.options().returnNew(true), TreeNode.class);
+  }
+
+  @Override
+  public long moveSubtree(
+      String nodeId,
+      Long version,
+      int level,
+      List<String> newAncestors,
+      @Nullable AggregatedAccessControlInformation effectiveAccessControl) {
+    ServerCapabilities capabilities = getServerCapabilities();
+    if (!capabilities.transactions) {
+      return moveSubtree(
+          operations, nodeId, version, level, newAncestors, effectiveAccessControl, capabilities);
+    }
+    ClientSessionOptions sessionOptions =
+        ClientSessionOptions.builder().causallyConsistent(true).build();
+    try (ClientSession session = mongoDbFactory.getSession(sessionOptions)) {
+      session.startTransaction();
+      try {
+        long movedNodes =
+            moveSubtree(
+                operations.withSession(session),
+                nodeId,
+                version,
+                level,
+                newAncestors,
+                effectiveAccessControl,
+                capabilities);
+        if (movedNodes > 0) {
+          session.commitTransaction();
+        } else {
+          session.abortTransaction();
+        }
+        return movedNodes;
+      } catch (RuntimeException e) {
+        if (session.hasActiveTransaction()) {
+          session.abortTransaction();
+        }
+        throw e;
+      }
+    }
+  }
+
+  private long moveSubtree(
+      MongoOperations ops,
+      String nodeId,
+      Long version,
+      int level,
+      List<String> newAncestors,
+      @Nullable AggregatedAccessControlInformation effectiveAccessControl,
+      ServerCapabilities capabilities) {
+    UpdateResult nodeResult =
+        ops.updateFirst(
+            new Query(where("id").is(nodeId).and("version").is(version)),
+            new Update()
+                .set("ancestors", newAncestors)
+                .set("parentId", newAncestors.get(newAncestors.size() - 1))
+                .set("effectiveAccessControl", effectiveAccessControl),
+            TreeNode.class);
+    if (nodeResult.getModifiedCount() == 0) {
+      return 0;
+    }
+    if (!capabilities.pipelineUpdates) {
+      return 1 + moveDescendantsInBulk(ops, nodeId, level, newAncestors);
+    }
+    // the descendants share the old ancestors of the node, so those are replaced by the new ones
+    // and everything from the node on is kept
+    Document movedAncestors =
+        new Document(
+            "$concatArrays",
+            Arrays.asList(
+                new Document("$literal", newAncestors),
+                new Document(
+                    "$slice",
+                    Arrays.asList("$ancestors", level, new Document("$size", "$ancestors")))));
+    List<Document> pipeline =
+        Collections.singletonList(
+            new Document("$set", new Document("ancestors", movedAncestors)));
+    UpdateResult descendantsResult =
+        ops.execute(
+            TreeNode.class,
+            collection -> collection.updateMany(new Document("ancestors", nodeId), pipeline));
+    return 1 + descendantsResult.getModifiedCount();
+  }
+
+  /** Fallback for deployments without update pipelines: one ordered bulk write. */
+  private long moveDescendantsInBulk(
+      MongoOperations ops, String nodeId, int level, List<String> newAncestors) {
+    Query descendantsQuery = new Query(where("ancestors").is(nodeId));
+    descendantsQuery.fields().include("ancestors");
+    List<TreeNode> descendants = ops.find(descendantsQuery, TreeNode.class);
+    if (descendants.isEmpty()) {
+      return 0;
+    }
+    BulkOperations bulk = ops.bulkOps(BulkOperations.BulkMode.ORDERED, TreeNode.class);
+    for (TreeNode descendant : descendants) {
+      List<String> ancestors = new ArrayList<>(newAncestors);
+      ancestors.addAll(descendant.getAncestors().subList(level, descendant.getAncestors().size()));
+      bulk.updateOne(
+          new Query(where("id").is(descendant.getId())), new Update().set("ancestors", ancestors));
+    }
+    return bulk.execute().getModifiedCount();
+  }
+
+  private ServerCapabilities getServerCapabilities() {
+    if (serverCapabilities == null) {
+      Document isMaster = operations.executeCommand(new Document("isMaster", 1));
+      Object maxWireVersion = isMaster.get("maxWireVersion");
+      int wireVersion = maxWireVersion instanceof Number ? ((Number) maxWireVersion).intValue() : 0;
+      boolean replicaSet = isMaster.containsKey("setName");
+      boolean sharded = "isdbgrid".equals(isMaster.get("msg"));
+      // wire version 7 is MongoDB 4.0, 8 is 4.2
+      serverCapabilities =
+          new ServerCapabilities(
+              (replicaSet && wireVersion >= 7) || (sharded && wireVersion >= 8), wireVersion >= 8);
+    }
+    return serverCapabilities;
+  }
+
+  @RequiredArgsConstructor
+  private static final class ServerCapabilities {
+    private final boolean transactions;
+    private final boolean pipelineUpdates;
+  }
+
   @Override
   public ObjectVersion<TreeNode> save(TreeNode node, String comment, String userId) {
     operations.save(node);
@@ -218,16 +557,26 @@ public class TreeNodeRepositoryImpl implements TreeNodeRepositoryCustom {
   @Override
   public List<TreeNode> getAll(
       ProjectionType pt, @Nullable Date updatedAfter, NodeType... nodeTypes) {
-    Criteria aggregatedSelection;
-    Criteria selectByType = where("type").in((Object[]) nodeTypes);
-    Criteria selectNoTrash = where("trashed").ne(true);
+    return getAll(pt, updatedAfter, null, nodeTypes);
+  }
+
+  @Override
+  public List<TreeNode> getAll(
+      ProjectionType pt,
+      @Nullable Date updatedAfter,
+      @Nullable AccessPrincipal principal,
+      NodeType... nodeTypes) {
+    List<Criteria> selection = new ArrayList<>();
+    selection.add(where("type").in((Object[]) nodeTypes));
+    selection.add(where("trashed").ne(true));
 
     if (updatedAfter != null) {
-      Criteria selectByLastModified = where("lastModifiedDate").gt(updatedAfter);
-      aggregatedSelection = selectByType.andOperator(selectNoTrash, selectByLastModified);
-    } else {
-      aggregatedSelection = selectByType.andOperator(selectNoTrash);
+      selection.add(where("lastModifiedDate").gt(updatedAfter));
+    }
+    if (principal != null && !principal.isAdmin()) {
+      selection.add(readableBy(principal));
     }
+    Criteria aggregatedSelection = new Criteria().andOperator(selection.toArray(new Criteria[0]));
     AggregationResults<TreeNode> results =
         operations.aggregate(
             newAggregation(TreeNode.class, match(aggregatedSelection), getTreeNodeProjection(pt)),
@@ -319,22 +668,127 @@ public class TreeNodeRepositoryImpl implements TreeNodeRepositoryCustom {
       @Nullable String searchTerm,
       Collection<String> folderIds,
       Pageable pageable,
-      List<NodeType> nodeTypes) {
+      List<NodeType> nodeTypes,
+      AccessPrincipal principal) {
     // get all nodes that are children of the available folder or that are themselves
     // an available folder
-    String parentFolderId = String.format("ancestors.%d", 1);
     Criteria hasNodeType = where("type").in(nodeTypes);
     Criteria notTrashed = where("trashed").ne(true);
+    // direct children of the folders, which are on level 1
     Criteria availableSubnodes =
-        where(parentFolderId).in(folderIds).andOperator(where("ancestors").size(2));
+        where("ancestors").in(folderIds).andOperator(where("ancestors").size(2));
     Criteria isVisibleNode = hasNodeType.orOperator(where("id").in(folderIds), availableSubnodes);
-    Criteria fullCriteria =
-        searchTerm != null
-            ? isVisibleNode.andOperator(Criteria.where("name").regex(searchTerm, "i"), notTrashed)
-            : isVisibleNode.andOperator(notTrashed);
+    List<Criteria> restrictions = new ArrayList<>();
+    restrictions.add(notTrashed);
+    if (searchTerm != null) {
+      restrictions.add(Criteria.where("name").regex(searchTerm, "i"));
+    }
+    if (!principal.isAdmin()) {
+      // filter before skip/limit are applied, so pages only count nodes the user can see
+      restrictions.add(readableBy(principal));
+    }
+    Criteria fullCriteria = isVisibleNode.andOperator(restrictions.toArray(new Criteria[0]));
 
     Query searchQuery = new Query(fullCriteria).with(pageable);
 
     return operations.find(searchQuery, TreeNode.class);
   }
+
+  @Override
+  public List<TreeNode> getAccessControlledDescendants(String nodeId) {
+    Query descendantsQuery = new Query(where("ancestors").is(nodeId));
+    descendantsQuery
+        .fields()
+        .include("ancestors")
+        .include("ownerId")
+        .include("accessControl")
+        .include("acl")
+        .include("effectiveAccessControl");
+    return operations.find(descendantsQuery, TreeNode.class);
+  }
+
+  @Override
+  public CloseableIterator<TreeNode> streamWithoutEffectiveAccessControl() {
+    Query query = new Query(where("effectiveAccessControl").exists(false));
+    query
+        .fields()
+        .include("ancestors")
+        .include("ownerId")
+        .include("accessControl")
+        .include("acl");
+    return operations.stream(query, TreeNode.class);
+  }
+
+  @Override
+  public UpdateResult setEffectiveAccessControl(
+      Collection<String> nodeIds, AggregatedAccessControlInformation effectiveAccessControl) {
+    return operations.updateMulti(
+        new Query(where("id").in(nodeIds)),
+        new Update().set("effectiveAccessControl", effectiveAccessControl),
+        TreeNode.class);
+  }
+
+  @Override
+  public UpdateResult replaceEffectiveAccessControl(
+      String ancestorId,
+      String sourceNodeId,
+      AggregatedAccessControlInformation effectiveAccessControl) {
+    return operations.updateMulti(
+        new Query(
+            where("ancestors")
+                .is(ancestorId)
+                .and("effectiveAccessControl.nodeId")
+                .is(sourceNodeId)),
+        new Update().set("effectiveAccessControl", effectiveAccessControl),
+        TreeNode.class);
+  }
+
+  /**
+   * Translates the READ rules of {@code AccessControlUtil} into a query: the principal owns the
+   * node, the node is public or grants READ in its ACL. Nodes with INHERIT access control are
+   * matched on their effective access control instead. Those which don't carry it yet can't be
+   * decided here and are always matched, leaving them to be checked in memory.
+   *
+   * @param principal The principal trying to read the nodes.
+   * @return Criteria matching the nodes the principal may read.
+   */
+  private Criteria readableBy(AccessPrincipal principal) {
+    Criteria grantsRead =
+        new Criteria()
+            .andOperator(
+                where("permissions").is(Permission.READ),
+                new Criteria()
+                    .orOperator(
+                        where("type").is(AccessIdType.ALL),
+                        where("type").is(AccessIdType.USER).and("_id").is(principal.getUserId()),
+                        where("type")
+                            .is(AccessIdType.GROUP)
+                            .and("_id")
+                            .in(principal.getGroupIds())));
+    List<AccessControlType> publicTypes =
+        Arrays.asList(AccessControlType.PUBLIC_READ_ONLY, AccessControlType.PUBLIC_READ_WRITE);
+    return new Criteria()
+        .orOperator(
+            where("ownerId").is(principal.getUserId()),
+            where("accessControl").in(publicTypes),
+            where("accessControl").is(AccessControlType.ADVANCED).and("acl").elemMatch(grantsRead),
+            where("accessControl")
+                .is(AccessControlType.INHERIT)
+                .and("effectiveAccessControl")
+                .is(null),
+            where("accessControl")
+                .is(AccessControlType.INHERIT)
+                .and("effectiveAccessControl.ownerId")
+                .is(principal.getUserId()),
+            where("accessControl")
+                .is(AccessControlType.INHERIT)
+                .and("effectiveAccessControl.accessControl")
+                .in(publicTypes),
+            where("accessControl")
+                .is(AccessControlType.INHERIT)
+                .and("effectiveAccessControl.accessControl")
+                .is(AccessControlType.ADVANCED)
+                .and("effectiveAccessControl.acl")
+                .elemMatch(grantsRead));
+  }
 }
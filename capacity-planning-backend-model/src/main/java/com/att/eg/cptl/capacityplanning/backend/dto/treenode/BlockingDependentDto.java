@@ -0,0 +1,17 @@
+package com.att.eg.cptl.capacityplanning.backend.dto.treenode;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** A node which keeps other nodes from being deleted because it depends on them. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BlockingDependentDto {
+  private String nodeId;
+  // true if releases of the node depend on the nodes, false if the node itself does
+  private boolean release;
+  private List<String> dependencyIds;
+}
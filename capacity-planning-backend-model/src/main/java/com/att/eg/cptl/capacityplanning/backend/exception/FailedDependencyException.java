@@ -1,7 +1,22 @@
 package com.att.eg.cptl.capacityplanning.backend.exception;
 
+import com.att.eg.cptl.capacityplanning.backend.dto.treenode.BlockingDependentDto;
+import java.util.Collections;
+import java.util.List;
+
 public class FailedDependencyException extends RuntimeException {
+  private final List<BlockingDependentDto> blockingDependents;
+
   public FailedDependencyException(String message) {
+    this(message, Collections.emptyList());
+  }
+
+  public FailedDependencyException(String message, List<BlockingDependentDto> blockingDependents) {
     super(message);
+    this.blockingDependents = blockingDependents;
+  }
+
+  public List<BlockingDependentDto> getBlockingDependents() {
+    return blockingDependents;
   }
 }
@@ -0,0 +1,153 @@
+package com.att.eg.cptl.capacityplanning.backend.jobs;
+
+import com.att.eg.cptl.capacityplanning.backend.dao.ContentFileStore;
+import com.att.eg.cptl.capacityplanning.backend.dao.ContentStore;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.ContentBlob;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNode;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNodeLog;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Removes content blobs and files which no tree node, version or release references anymore.
+ * They aren't reference counted, as counts would have to be kept in step with every insert, save
+ * and delete of both collections. Instead the sweep collects the hashes still referenced and
+ * removes all other blobs and files which haven't been referenced for a grace period. The grace
+ * period covers blobs and files written right before the document referencing them.
+ */
+@Component
+public class ContentBlobCollector {
+  private static final Logger LOGGER = LogManager.getLogger(ContentBlobCollector.class);
+  private static final int BATCH_SIZE = 1000;
+
+  @Autowired private MongoOperations mongoOperations;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  @Autowired private ContentFileStore contentFileStore;
+
+  @Value("${content.blobStore.gracePeriodSeconds:3600}")
+  private long gracePeriodSeconds;
+
+  private Counter removedBlobs;
+
+  private Timer sweepDuration;
+
+  @PostConstruct
+  public void init() {
+    removedBlobs =
+        Counter.builder("content.blobStore.removed")
+            .description("number of unreferenced content blobs and files removed by the sweep")
+            .register(meterRegistry);
+    sweepDuration =
+        Timer.builder("content.blobStore.sweep")
+            .description("duration of the sweep of unreferenced content blobs")
+            .register(meterRegistry);
+  }
+
+  @Scheduled(
+      initialDelayString = "${content.blobStore.sweepIntervalMillis:3600000}",
+      fixedDelayString = "${content.blobStore.sweepIntervalMillis:3600000}")
+  public void removeUnreferencedBlobs() {
+    long start = System.nanoTime();
+    long removed = 0;
+    try {
+      // blobs referenced after this are kept no matter what the mark finds
+      Date cutoff = new Date(System.currentTimeMillis() - gracePeriodSeconds * 1000);
+      Set<String> referencedHashes = new HashSet<>();
+      Set<String> referencedFiles = new HashSet<>();
+      for (Class<?> entityClass : Arrays.asList(TreeNode.class, TreeNodeLog.class)) {
+        String collectionName = mongoOperations.getCollectionName(entityClass);
+        collectHashes(collectionName, ContentStore.HASH_FIELD, referencedHashes);
+        collectHashes(collectionName, ContentStore.FILE_FIELD, referencedFiles);
+      }
+      removed = removeBlobsExcept(referencedHashes, cutoff);
+      removed += contentFileStore.removeUnreferenced(referencedFiles, cutoff);
+    } catch (DataAccessException | MongoException e) {
+      LOGGER.error("removing unreferenced content blobs and files failed", e);
+    } finally {
+      removedBlobs.increment(removed);
+      sweepDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+    if (removed > 0) {
+      LOGGER.info("removed " + removed + " unreferenced content blobs and files");
+    }
+  }
+
+  // read through the driver, the content store would resolve the hashes when loaded by the template
+  private void collectHashes(String collectionName, String field, Set<String> hashes) {
+    mongoOperations.execute(
+        collectionName,
+        collection -> {
+          try (MongoCursor<Document> documents =
+              collection
+                  .find(new Document(field, new Document("$exists", true)))
+                  .projection(new Document(field, 1).append("_id", 0))
+                  .iterator()) {
+            while (documents.hasNext()) {
+              hashes.add(documents.next().getString(field));
+            }
+          }
+          return null;
+        });
+  }
+
+  private long removeBlobsExcept(Set<String> referencedHashes, Date cutoff) {
+    Document notReferencedSince = new Document("lastReferenced", new Document("$lt", cutoff));
+    return mongoOperations.execute(
+        mongoOperations.getCollectionName(ContentBlob.class),
+        collection -> {
+          long removed = 0;
+          List<String> unreferenced = new ArrayList<>();
+          try (MongoCursor<Document> blobs =
+              collection.find(notReferencedSince).projection(new Document("_id", 1)).iterator()) {
+            while (blobs.hasNext()) {
+              String hash = blobs.next().getString("_id");
+              if (!referencedHashes.contains(hash)) {
+                unreferenced.add(hash);
+              }
+              if (unreferenced.size() >= BATCH_SIZE) {
+                removed += remove(collection, unreferenced, notReferencedSince);
+              }
+            }
+          }
+          if (!unreferenced.isEmpty()) {
+            removed += remove(collection, unreferenced, notReferencedSince);
+          }
+          return removed;
+        });
+  }
+
+  /** Remove a batch of blobs, unless they have been referenced again since, and clear it. */
+  private long remove(
+      MongoCollection<Document> collection, List<String> hashes, Document notReferencedSince) {
+    long removed =
+        collection
+            .deleteMany(
+                new Document(notReferencedSince).append("_id", new Document("$in", hashes)))
+            .getDeletedCount();
+    hashes.clear();
+    return removed;
+  }
+}
@@ -0,0 +1,90 @@
+package com.att.eg.cptl.capacityplanning.backend.jobs;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import com.att.eg.cptl.capacityplanning.backend.dao.DependencyEdgeRepository;
+import com.att.eg.cptl.capacityplanning.backend.model.BackfillState;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.DependencyEdge;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNode;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNodeBase;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNodeLog;
+import com.att.eg.cptl.capacityplanning.backend.service.util.treenode.DependencyOps;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import javax.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Builds the dependency edges of tree nodes and releases stored before the edges were maintained
+ * alongside them. Runs at startup until it has completed once, which is recorded as a {@link
+ * BackfillState}. Edges are upserted, so a run that failed partway, edges written by requests
+ * meanwhile and several instances running it at the same time all end up with the complete edges.
+ */
+@Component
+public class DependencyEdgeBackfill {
+  private static final Logger LOGGER = LogManager.getLogger(DependencyEdgeBackfill.class);
+  private static final int BATCH_SIZE = 1000;
+  private static final String BACKFILL_ID = "dependencyEdges";
+  // increase to build the edges again, e.g. once more is kept in them
+  private static final int BACKFILL_VERSION = 1;
+
+  @Autowired private MongoOperations mongoOperations;
+
+  @Autowired private DependencyEdgeRepository dependencyEdgeRepository;
+
+  @Value("${treenode.dependencyEdges.backfill:true}")
+  private boolean backfill;
+
+  @PostConstruct
+  public void init() {
+    if (!backfill) {
+      return;
+    }
+    try {
+      BackfillState state = mongoOperations.findById(BACKFILL_ID, BackfillState.class);
+      if (state != null && state.getVersion() >= BACKFILL_VERSION) {
+        return;
+      }
+      LOGGER.info("building the dependency edges of tree nodes");
+      Query dependentsQuery = new Query(where("processDependencies.0").exists(true));
+      long edges = upsertEdges(dependentsQuery, TreeNode.class);
+      Query releasesQuery =
+          new Query(where("processDependencies.0").exists(true).and("releaseNr").exists(true));
+      edges += upsertEdges(releasesQuery, TreeNodeLog.class);
+      BackfillState completed = new BackfillState();
+      completed.setId(BACKFILL_ID);
+      completed.setVersion(BACKFILL_VERSION);
+      completed.setCompletedDate(new Date());
+      mongoOperations.save(completed);
+      LOGGER.info("built " + edges + " dependency edges");
+    } catch (DataAccessException e) {
+      LOGGER.warn("could not build the dependency edges of tree nodes", e);
+    }
+  }
+
+  private <T extends TreeNodeBase> long upsertEdges(Query query, Class<T> entityClass) {
+    long upsertedEdges = 0;
+    List<DependencyEdge> batch = new ArrayList<>();
+    try (CloseableIterator<T> dependents = mongoOperations.stream(query, entityClass)) {
+      while (dependents.hasNext()) {
+        batch.addAll(DependencyOps.getDependencyEdges(dependents.next()));
+        if (batch.size() >= BATCH_SIZE) {
+          dependencyEdgeRepository.upsertEdges(batch);
+          upsertedEdges += batch.size();
+          batch.clear();
+        }
+      }
+    }
+    dependencyEdgeRepository.upsertEdges(batch);
+    return upsertedEdges + batch.size();
+  }
+}
@@ -0,0 +1,81 @@
+package com.att.eg.cptl.capacityplanning.backend.jobs;
+
+import com.att.eg.cptl.capacityplanning.backend.dao.TreeNodeRepository;
+import com.att.eg.cptl.capacityplanning.backend.model.BackfillState;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNode;
+import com.att.eg.cptl.capacityplanning.backend.service.TreeNodeService;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import javax.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills in the effective access control of tree nodes stored before it was maintained alongside
+ * the nodes. Runs at startup until it has completed once, which is recorded as a {@link
+ * BackfillState}, and only reads the nodes which don't carry it yet, in batches. Until then, nodes
+ * without it fall back to walking their ancestors.
+ */
+@Component
+public class EffectiveAccessControlBackfill {
+  private static final Logger LOGGER = LogManager.getLogger(EffectiveAccessControlBackfill.class);
+  private static final int BATCH_SIZE = 1000;
+  private static final String BACKFILL_ID = "effectiveAccessControl";
+  // increase to fill it in again, e.g. once more is kept in it
+  private static final int BACKFILL_VERSION = 1;
+
+  @Autowired private MongoOperations mongoOperations;
+
+  @Autowired private TreeNodeRepository treeNodeRepository;
+
+  @Autowired private TreeNodeService treeNodeService;
+
+  @Value("${treenode.effectiveAccessControl.backfill:true}")
+  private boolean backfill;
+
+  @PostConstruct
+  public void init() {
+    if (!backfill) {
+      return;
+    }
+    try {
+      BackfillState state = mongoOperations.findById(BACKFILL_ID, BackfillState.class);
+      if (state != null && state.getVersion() >= BACKFILL_VERSION) {
+        return;
+      }
+      LOGGER.info("filling in the effective access control of tree nodes");
+      long filledIn = 0;
+      List<TreeNode> batch = new ArrayList<>();
+      try (CloseableIterator<TreeNode> nodes =
+          treeNodeRepository.streamWithoutEffectiveAccessControl()) {
+        while (nodes.hasNext()) {
+          batch.add(nodes.next());
+          if (batch.size() >= BATCH_SIZE) {
+            treeNodeService.fillInEffectiveAccessControl(batch);
+            filledIn += batch.size();
+            batch.clear();
+          }
+        }
+      }
+      if (!batch.isEmpty()) {
+        treeNodeService.fillInEffectiveAccessControl(batch);
+        filledIn += batch.size();
+      }
+      BackfillState completed = new BackfillState();
+      completed.setId(BACKFILL_ID);
+      completed.setVersion(BACKFILL_VERSION);
+      completed.setCompletedDate(new Date());
+      mongoOperations.save(completed);
+      LOGGER.info("filled in the effective access control of " + filledIn + " tree nodes");
+    } catch (DataAccessException e) {
+      LOGGER.warn("could not fill in the effective access control of tree nodes", e);
+    }
+  }
+}
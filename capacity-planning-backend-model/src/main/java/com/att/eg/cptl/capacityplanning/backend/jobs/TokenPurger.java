@@ -1,13 +1,126 @@
 package com.att.eg.cptl.capacityplanning.backend.jobs;
 
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import com.att.eg.cptl.capacityplanning.backend.model.Session;
+import com.mongodb.client.result.DeleteResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+/**
+ * Removes sessions whose token has expired. As the expiry is static, MongoDB's TTL monitor takes
+ * care of most of them; the scheduled sweep catches what the TTL index can't (sessions without an
+ * issue time, deployments where the index couldn't be created) and keeps the collection small in
+ * between TTL monitor runs.
+ */
 @Component
 public class TokenPurger {
+  private static final Logger LOGGER = LogManager.getLogger(TokenPurger.class);
+
+  @Autowired private MongoOperations mongoOperations;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  @Value("${token.expirySeconds}")
+  private long expirySeconds;
+
+  @Value("${token.purge.batchSize:1000}")
+  private int batchSize;
+
+  @Value("${token.purge.ttlIndex:true}")
+  private boolean createTtlIndex;
+
+  private Counter purgedSessions;
+
+  private Timer sweepDuration;
+
+  @PostConstruct
+  public void init() {
+    purgedSessions =
+        Counter.builder("session.purge.deleted")
+            .description("number of expired sessions removed by the sweep")
+            .register(meterRegistry);
+    sweepDuration =
+        Timer.builder("session.purge.duration")
+            .description("duration of the expired session sweep")
+            .register(meterRegistry);
+    if (createTtlIndex) {
+      ensureTtlIndex();
+    }
+  }
 
   @Scheduled(cron = "5 * * * * ?")
   public void purgeExpiredSessions() {
-    /* not needed atm */
+    long start = System.nanoTime();
+    long purged = 0;
+    try {
+      Criteria expired =
+          new Criteria()
+              .orOperator(
+                  where("issueTime").lt(LocalDateTime.now().minusSeconds(expirySeconds)),
+                  where("issueTime").is(null));
+      while (true) {
+        // delete in batches of ids, so a big backlog doesn't end up in a single long delete
+        Query batchQuery = query(expired).limit(batchSize);
+        batchQuery.fields().include("_id");
+        List<String> ids =
+            mongoOperations
+                .find(batchQuery, Session.class)
+                .stream()
+                .map(Session::getId)
+                .collect(Collectors.toList());
+        if (ids.isEmpty()) {
+          break;
+        }
+        DeleteResult result =
+            mongoOperations.remove(query(where("_id").in(ids)).addCriteria(expired), Session.class);
+        purged += result.getDeletedCount();
+        if (ids.size() < batchSize) {
+          break;
+        }
+      }
+    } catch (DataAccessException e) {
+      LOGGER.error("purging expired sessions failed", e);
+    } finally {
+      purgedSessions.increment(purged);
+      sweepDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+    if (purged > 0) {
+      LOGGER.info("purged " + purged + " expired sessions");
+    }
+  }
+
+  private void ensureTtlIndex() {
+    try {
+      mongoOperations
+          .indexOps(Session.class)
+          .ensureIndex(
+              new Index()
+                  .on("issueTime", Sort.Direction.ASC)
+                  .named("issueTime_ttl")
+                  .expire(expirySeconds, TimeUnit.SECONDS));
+    } catch (DataAccessException e) {
+      // e.g. an index on issueTime with a different expiry already exists
+      LOGGER.warn("could not create TTL index on session.issueTime, relying on the sweep", e);
+    }
   }
 }
@@ -0,0 +1,144 @@
+package com.att.eg.cptl.capacityplanning.backend.jobs;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import com.att.eg.cptl.capacityplanning.backend.model.BackfillState;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNode;
+import com.mongodb.BulkWriteError;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills in the parent id of tree nodes stored before it was kept alongside their ancestors, and
+ * stores nodes which aren't trashed with trashed set to false. Only then the unique index on the
+ * names of siblings covers them. Run at startup by the {@link
+ * com.att.eg.cptl.capacityplanning.backend.config.MongoIndexProvisioner} once that index exists,
+ * which rejects nodes sharing their name with a sibling. Those can't be covered, they are reported
+ * once and recorded in a {@link BackfillState}, so later runs skip them. Saving such a node, e.g.
+ * to rename it, covers it. A no-op as soon as all other nodes are covered.
+ */
+@Component
+public class TreeNodeParentIdBackfill {
+  private static final Logger LOGGER = LogManager.getLogger(TreeNodeParentIdBackfill.class);
+  private static final int BATCH_SIZE = 1000;
+  private static final String BACKFILL_ID = "treeNodeParentId";
+
+  @Autowired private MongoOperations mongoOperations;
+
+  @Value("${treenode.parentId.backfill:true}")
+  private boolean backfill;
+
+  public void run() {
+    if (!backfill) {
+      return;
+    }
+    try {
+      BackfillState state = mongoOperations.findById(BACKFILL_ID, BackfillState.class);
+      List<String> skippedIds =
+          state == null || state.getSkippedIds() == null
+              ? Collections.emptyList()
+              : state.getSkippedIds();
+      Query uncoveredQuery =
+          new Query(
+              new Criteria()
+                  .orOperator(
+                      where("parentId").exists(false).and("ancestors.0").exists(true),
+                      where("trashed").is(null))
+                  .and("_id")
+                  .nin(skippedIds));
+      uncoveredQuery.fields().include("ancestors").include("trashed");
+      if (mongoOperations.exists(uncoveredQuery, TreeNode.class)) {
+        LOGGER.info("filling in the parent id of tree nodes");
+        fillIn(uncoveredQuery);
+      }
+    } catch (DataAccessException e) {
+      LOGGER.warn("could not fill in the parent id of tree nodes", e);
+    }
+  }
+
+  private void fillIn(Query uncoveredQuery) {
+    String collectionName = mongoOperations.getCollectionName(TreeNode.class);
+    long updatedNodes = 0;
+    List<String> duplicateNameIds = new ArrayList<>();
+    BulkOperations bulkOperations = newBulkOperations();
+    List<String> batchIds = new ArrayList<>();
+    // read as documents, a missing trashed field would be read as false otherwise
+    try (CloseableIterator<Document> nodes =
+        mongoOperations.stream(uncoveredQuery, Document.class, collectionName)) {
+      while (nodes.hasNext()) {
+        Document node = nodes.next();
+        Update update = new Update();
+        List<String> ancestors = node.getList("ancestors", String.class);
+        if (ancestors != null && !ancestors.isEmpty()) {
+          update.set("parentId", ancestors.get(ancestors.size() - 1));
+        }
+        if (node.get("trashed") == null) {
+          update.set("trashed", false);
+        }
+        bulkOperations.updateOne(new Query(where("_id").is(node.get("_id"))), update);
+        batchIds.add(String.valueOf(node.get("_id")));
+        if (batchIds.size() >= BATCH_SIZE) {
+          List<String> duplicates = execute(bulkOperations, batchIds);
+          updatedNodes += batchIds.size() - duplicates.size();
+          duplicateNameIds.addAll(duplicates);
+          bulkOperations = newBulkOperations();
+          batchIds.clear();
+        }
+      }
+    }
+    if (!batchIds.isEmpty()) {
+      List<String> duplicates = execute(bulkOperations, batchIds);
+      updatedNodes += batchIds.size() - duplicates.size();
+      duplicateNameIds.addAll(duplicates);
+    }
+    LOGGER.info("filled in the parent id of " + updatedNodes + " tree nodes");
+    if (!duplicateNameIds.isEmpty()) {
+      // recorded, so they are only reported once
+      mongoOperations.upsert(
+          new Query(where("_id").is(BACKFILL_ID)),
+          new Update().addToSet("skippedIds").each(duplicateNameIds.toArray()),
+          BackfillState.class);
+      LOGGER.warn(
+          "tree nodes "
+              + duplicateNameIds
+              + " share their name with a sibling and are left out of the unique index until they"
+              + " are renamed");
+    }
+  }
+
+  private BulkOperations newBulkOperations() {
+    return mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, TreeNode.class);
+  }
+
+  /**
+   * @param batchIds The ids of the nodes updated by the bulk operations, in order.
+   * @return The ids of the nodes whose update failed, i.e. of nodes sharing their name with a
+   *     sibling.
+   */
+  private List<String> execute(BulkOperations bulkOperations, List<String> batchIds) {
+    List<String> failedIds = new ArrayList<>();
+    try {
+      bulkOperations.execute();
+    } catch (BulkOperationException e) {
+      for (BulkWriteError error : e.getErrors()) {
+        failedIds.add(batchIds.get(error.getIndex()));
+      }
+    }
+    return failedIds;
+  }
+}
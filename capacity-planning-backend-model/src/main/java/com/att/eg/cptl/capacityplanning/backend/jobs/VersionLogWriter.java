@@ -0,0 +1,264 @@
+package com.att.eg.cptl.capacityplanning.backend.jobs;
+
+import com.att.eg.cptl.capacityplanning.backend.dao.TreeNodeLogRepository;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNodeLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes the versions of tree nodes in the background, so saving a node doesn't wait for its
+ * version log. Versions are queued in memory and written in batches by a single thread, which also
+ * takes care of replacing versions made in quick succession. If the queue is full, a saving thread
+ * waits for space for a while and then writes everything queued along with its own version itself,
+ * or queues its version behind the others if that fails. A batch that couldn't be written is kept
+ * and written again before anything else, up to a number of attempts. Whatever is still queued is
+ * written on shutdown. Reads of the versions of a node need to {@link #flush(String)} them first.
+ */
+@Component
+public class VersionLogWriter {
+  private static final Logger LOGGER = LogManager.getLogger(VersionLogWriter.class);
+
+  @Autowired private TreeNodeLogRepository treeNodeLogRepository;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  @Value("${treenode.versionLog.queueSize:10000}")
+  private int queueSize;
+
+  @Value("${treenode.versionLog.batchSize:500}")
+  private int batchSize;
+
+  @Value("${treenode.versionLog.offerTimeoutMillis:1000}")
+  private long offerTimeoutMillis;
+
+  @Value("${treenode.versionLog.retryDelayMillis:5000}")
+  private long retryDelayMillis;
+
+  @Value("${treenode.versionLog.maxAttempts:10}")
+  private int maxAttempts;
+
+  private BlockingQueue<TreeNodeLog> queue;
+
+  // wakes up the writer thread, the permits don't need to match the queued versions
+  private final Semaphore versionsQueued = new Semaphore(0);
+
+  // versions of the same node have to be written in order, so only one batch is written at a time
+  private final Object writeLock = new Object();
+
+  // versions whose write failed and the number of attempts so far, guarded by writeLock
+  private final List<TreeNodeLog> failedBatch = new ArrayList<>();
+  private int failedAttempts;
+
+  private volatile boolean running;
+
+  private Thread writer;
+
+  @PostConstruct
+  public void init() {
+    queue = new ArrayBlockingQueue<>(queueSize);
+    meterRegistry.gaugeCollectionSize("treenode.versionLog.queued", Tags.empty(), queue);
+    running = true;
+    writer = new Thread(this::writeQueuedVersions, "version-log-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Queue a version to be written.
+   *
+   * @param version The version. It must not be changed afterwards.
+   */
+  public void write(TreeNodeLog version) {
+    if (running) {
+      try {
+        if (queue.offer(version, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+          versionsQueued.release();
+          if (!running) {
+            // queued while shutting down, after the writer thread stopped
+            flushOnShutdown();
+          }
+          return;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      LOGGER.warn("version log queue is full, writing versions on the calling thread");
+    }
+    synchronized (writeLock) {
+      try {
+        flush();
+        treeNodeLogRepository.insertVersion(version);
+      } catch (RuntimeException e) {
+        // the node has been saved already, so the version is written later on, after the versions
+        // queued before it
+        if (queue.offer(version)) {
+          versionsQueued.release();
+          LOGGER.error("could not write versions of tree nodes, writing them again later", e);
+        } else {
+          LOGGER.error("could not write versions of tree nodes, the version log queue is full", e);
+          meterRegistry.counter("treenode.versionLog.lost").increment();
+        }
+      }
+    }
+  }
+
+  private void flushOnShutdown() {
+    try {
+      flush();
+    } catch (RuntimeException e) {
+      LOGGER.error("could not write versions of tree nodes on shutdown, they are lost", e);
+      meterRegistry.counter("treenode.versionLog.lost").increment(countUnwrittenVersions());
+    }
+  }
+
+  /**
+   * Write all queued versions right away.
+   *
+   * @throws RuntimeException if a batch couldn't be written. It's kept to be written again and
+   *     everything queued after it stays queued, so versions of a node are written in order.
+   */
+  public void flush() {
+    synchronized (writeLock) {
+      writeFailedBatch();
+      List<TreeNodeLog> batch = new ArrayList<>();
+      while (queue.drainTo(batch, batchSize) > 0) {
+        try {
+          treeNodeLogRepository.insertVersions(batch);
+        } catch (RuntimeException e) {
+          failedBatch.addAll(batch);
+          failedAttempts = 1;
+          throw e;
+        }
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * Write the queued versions of a node right away, so they can be read. Versions of other nodes
+   * stay queued. Versions which can't be written are kept to be written again later on, and are
+   * missing from reads until then.
+   *
+   * @param nodeId The id of the node.
+   */
+  public void flush(String nodeId) {
+    synchronized (writeLock) {
+      try {
+        if (failedBatch.stream().anyMatch(version -> nodeId.equals(version.getBaseNodeId()))) {
+          writeFailedBatch();
+        }
+      } catch (RuntimeException e) {
+        LOGGER.error(
+            "could not write versions of tree node " + nodeId + ", reading without them", e);
+        return;
+      }
+      List<TreeNodeLog> versions = new ArrayList<>();
+      // the writer thread only drains the queue while holding the lock, the order is kept
+      Iterator<TreeNodeLog> queued = queue.iterator();
+      while (queued.hasNext()) {
+        TreeNodeLog version = queued.next();
+        if (nodeId.equals(version.getBaseNodeId())) {
+          versions.add(version);
+          queued.remove();
+        }
+      }
+      if (versions.isEmpty()) {
+        return;
+      }
+      try {
+        treeNodeLogRepository.insertVersions(versions);
+      } catch (RuntimeException e) {
+        if (failedBatch.isEmpty()) {
+          failedAttempts = 1;
+        }
+        failedBatch.addAll(versions);
+        versionsQueued.release();
+        LOGGER.error(
+            "could not write versions of tree node " + nodeId + ", reading without them", e);
+      }
+    }
+  }
+
+  private void writeFailedBatch() {
+    if (failedBatch.isEmpty()) {
+      return;
+    }
+    try {
+      // the failed write may have stored some of the versions
+      Set<String> storedIds =
+          new HashSet<>(
+              treeNodeLogRepository.findStoredIds(
+                  failedBatch.stream().map(TreeNodeLog::getId).collect(Collectors.toList())));
+      failedBatch.removeIf(version -> storedIds.contains(version.getId()));
+      treeNodeLogRepository.insertVersions(failedBatch);
+    } catch (RuntimeException e) {
+      if (++failedAttempts < maxAttempts) {
+        throw e;
+      }
+      LOGGER.error(
+          "could not write "
+              + failedBatch.size()
+              + " versions of tree nodes in "
+              + failedAttempts
+              + " attempts, they are lost",
+          e);
+      meterRegistry.counter("treenode.versionLog.lost").increment(failedBatch.size());
+    }
+    failedBatch.clear();
+  }
+
+  private int countUnwrittenVersions() {
+    synchronized (writeLock) {
+      return failedBatch.size() + queue.size();
+    }
+  }
+
+  private boolean hasFailedBatch() {
+    synchronized (writeLock) {
+      return !failedBatch.isEmpty();
+    }
+  }
+
+  private void writeQueuedVersions() {
+    while (running) {
+      try {
+        if (hasFailedBatch()) {
+          versionsQueued.tryAcquire(retryDelayMillis, TimeUnit.MILLISECONDS);
+        } else {
+          versionsQueued.acquire();
+        }
+        versionsQueued.drainPermits();
+        flush();
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        LOGGER.error("could not write versions of tree nodes, writing them again later", e);
+      }
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    running = false;
+    writer.interrupt();
+    writer.join(TimeUnit.SECONDS.toMillis(10));
+    flushOnShutdown();
+  }
+}
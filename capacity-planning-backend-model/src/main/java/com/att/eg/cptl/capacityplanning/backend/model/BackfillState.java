@@ -0,0 +1,24 @@
+package com.att.eg.cptl.capacityplanning.backend.model;
+
+import java.util.Date;
+import java.util.List;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.lang.Nullable;
+
+/**
+ * Records that a backfill run at startup has completed, so it isn't run again. A backfill whose
+ * version is newer than the recorded one runs again. Backfills which run on every startup record
+ * the documents they have to skip instead.
+ */
+@Data
+@Document
+public class BackfillState {
+  // the name of the backfill
+  @Id private String id;
+  private int version;
+  private Date completedDate;
+  // the ids of documents the backfill can't cover and skips from then on
+  @Nullable private List<String> skippedIds;
+}
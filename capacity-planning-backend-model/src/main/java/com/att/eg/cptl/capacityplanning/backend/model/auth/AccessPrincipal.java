@@ -0,0 +1,16 @@
+package com.att.eg.cptl.capacityplanning.backend.model.auth;
+
+import java.util.Set;
+import lombok.Data;
+
+/** The identity against which access to tree nodes is checked when querying the database. */
+@Data
+public class AccessPrincipal {
+  private final String userId;
+  private final Set<String> groupIds;
+  private final Role role;
+
+  public boolean isAdmin() {
+    return role == Role.ADMIN;
+  }
+}
@@ -9,10 +9,13 @@ import com.att.eg.cptl.capacityplanning.backend.model.AppUser;
 import com.att.eg.cptl.capacityplanning.backend.model.UserGroup;
 import com.att.eg.cptl.capacityplanning.backend.model.auth.Role;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.AccessPermission;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.Permission;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNode;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNodeRelease;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Component;
@@ -105,10 +108,18 @@ public class DtoToModelConverter {
     AccessPermission accessPermission = new AccessPermission();
     accessPermission.setId(accessPermissionDto.getId());
     accessPermission.setType(accessPermissionDto.getType());
-    accessPermission.setPermissions(accessPermissionDto.getPermissions());
+    accessPermission.setPermissions(toPermissionSet(accessPermissionDto.getPermissions()));
     return accessPermission;
   }
 
+  private EnumSet<Permission> toPermissionSet(List<Permission> permissions) {
+    EnumSet<Permission> permissionSet = EnumSet.noneOf(Permission.class);
+    if (permissions != null) {
+      permissions.stream().filter(Objects::nonNull).forEach(permissionSet::add);
+    }
+    return permissionSet;
+  }
+
   public UserGroup convertDtoToUserGroup(UserGroupDto userGroupDto) {
     UserGroup userGroup = new UserGroup();
     userGroup.setId(userGroupDto.getId());
@@ -98,7 +98,7 @@ public class ModelToDtoConverter {
    * @return TreeNodeDto representing the inputted TreeNode
    */
   public TreeNodeDto createTreeNodeDto(
-      TreeNode treeNode, List<Permission> userPermissionsForThisNode) {
+      TreeNode treeNode, Set<Permission> userPermissionsForThisNode) {
     TreeNodeDto treeNodeDto = new TreeNodeDto();
     treeNodeDto.setId(treeNode.getId());
     treeNodeDto.setName(treeNode.getName());
@@ -127,12 +127,12 @@ public class ModelToDtoConverter {
     if (treeNode.getProcessDependencies() != null) {
       treeNodeDto.setProcessDependencies(treeNode.getProcessDependencies());
     }
-    treeNodeDto.setCurrentUserAccessPermissions(userPermissionsForThisNode);
+    treeNodeDto.setCurrentUserAccessPermissions(toPermissionList(userPermissionsForThisNode));
     return treeNodeDto;
   }
 
   public TreeNodeDto createTreeNodeDto(
-      TreeNode treeNode, List<Permission> userPermissionsForThisNode, List<TreeNode> ancestors) {
+      TreeNode treeNode, Set<Permission> userPermissionsForThisNode, List<TreeNode> ancestors) {
     TreeNodeDto dto = createTreeNodeDto(treeNode, userPermissionsForThisNode);
     if (ancestors != null && !ancestors.isEmpty()) {
       TreeNode parent = ancestors.get(ancestors.size() - 1);
@@ -216,10 +216,20 @@ public class ModelToDtoConverter {
     AccessPermissionDto accessPermissionDto = new AccessPermissionDto();
     accessPermissionDto.setId(accessPermission.getId());
     accessPermissionDto.setType(accessPermission.getType());
-    accessPermissionDto.setPermissions(accessPermission.getPermissions());
+    accessPermissionDto.setPermissions(toPermissionList(accessPermission.getPermissions()));
     return accessPermissionDto;
   }
 
+  /**
+   * Convert a set of permissions to the list form used by the DTOs.
+   *
+   * @param permissions The permissions to convert, may be null.
+   * @return The permissions in declaration order, or null if none were given.
+   */
+  public List<Permission> toPermissionList(Set<Permission> permissions) {
+    return permissions == null ? null : new ArrayList<>(permissions);
+  }
+
   /**
    * Creates a DTO representation of a UserGroup, given the UserGroup object and a list of the users
    * in the group.
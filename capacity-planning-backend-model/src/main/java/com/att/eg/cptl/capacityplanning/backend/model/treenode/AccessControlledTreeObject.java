@@ -5,4 +5,14 @@ import java.util.List;
 
 public interface AccessControlledTreeObject extends IdentifiedObject, AccessControlledObject {
   List<String> getAncestors();
+
+  /**
+   * The access control this object is effectively subject to, maintained alongside the object so
+   * INHERIT access control can be resolved without walking the ancestors.
+   *
+   * @return The effective access control, or null if it isn't known.
+   */
+  default AggregatedAccessControlInformation getEffectiveAccessControl() {
+    return null;
+  }
 }
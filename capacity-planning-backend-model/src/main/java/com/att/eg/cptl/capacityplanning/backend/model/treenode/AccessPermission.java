@@ -1,6 +1,6 @@
 package com.att.eg.cptl.capacityplanning.backend.model.treenode;
 
-import java.util.List;
+import java.util.EnumSet;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
 
@@ -8,5 +8,5 @@ import org.springframework.data.annotation.Id;
 public class AccessPermission {
   @Id private String id;
   private AccessIdType type;
-  private List<Permission> permissions;
+  private EnumSet<Permission> permissions;
 }
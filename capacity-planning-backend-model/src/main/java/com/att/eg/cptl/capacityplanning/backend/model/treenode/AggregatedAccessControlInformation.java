@@ -1,11 +1,20 @@
 package com.att.eg.cptl.capacityplanning.backend.model.treenode;
 
+import com.att.eg.cptl.capacityplanning.backend.model.IdentifiedObject;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import lombok.Data;
 
+/**
+ * The access control a node is subject to: the owner, type and ACL of the node itself or, for nodes
+ * with INHERIT access control, of the nearest ancestor which doesn't inherit.
+ */
 @Data
 public class AggregatedAccessControlInformation implements AccessControlledObject {
+  /** The id of the node the access control was taken from. */
+  private String nodeId;
+
   private AccessControlType accessControl;
   private List<AccessPermission> acl;
   private String ownerId;
@@ -16,6 +25,9 @@ public class AggregatedAccessControlInformation implements AccessControlledObjec
     if (aco == null) {
       aaci.setAccessControl(AccessControlType.PRIVATE);
     } else {
+      if (aco instanceof IdentifiedObject) {
+        aaci.setNodeId(((IdentifiedObject) aco).getId());
+      }
       aaci.setOwnerId(aco.getOwnerId());
       aaci.setAccessControl(aco.getAccessControl());
       if (aco.getAcl() != null
@@ -26,8 +38,12 @@ public class AggregatedAccessControlInformation implements AccessControlledObjec
         for (AccessPermission perm : aco.getAcl()) {
           AccessPermission newAp = new AccessPermission();
           newAp.setId(perm.getId());
-          newAp.setPermissions(new ArrayList<>(perm.getPermissions()));
+          newAp.setPermissions(
+              perm.getPermissions() == null
+                  ? EnumSet.noneOf(Permission.class)
+                  : EnumSet.copyOf(perm.getPermissions()));
           newAp.setType(perm.getType());
+          permissionList.add(newAp);
         }
         aaci.setAcl(permissionList);
       }
@@ -1,11 +1,11 @@
 package com.att.eg.cptl.capacityplanning.backend.model.treenode;
 
-import java.util.List;
+import java.util.Set;
 import lombok.Data;
 
 @Data
 public class BaseNodeInfo {
   private TreeNode treeNode;
-  private List<Permission> permissions;
+  private Set<Permission> permissions;
   private String parentName;
 }
@@ -0,0 +1,23 @@
+package com.att.eg.cptl.capacityplanning.backend.model.treenode;
+
+import java.util.Date;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * The content of tree nodes, versions and releases, stored once for all of them which share it.
+ * They only keep the id, which is the SHA-256 hash of the content's BSON.
+ */
+@Data
+@Document
+public class ContentBlob {
+  @Id private String id;
+  // the content, or its compressed BSON if compressed by the content codec
+  private Object content;
+  // size of the content's BSON in bytes
+  private long size;
+  // when a node, version or release referencing this was last written, unreferenced blobs are
+  // only removed once this is older than a grace period
+  private Date lastReferenced;
+}
@@ -0,0 +1,20 @@
+package com.att.eg.cptl.capacityplanning.backend.model.treenode;
+
+import java.util.List;
+import java.util.Map;
+import lombok.Data;
+import org.springframework.lang.Nullable;
+
+/**
+ * The structural difference between the content of two versions of a node. Fields which differ
+ * and aren't objects on both sides are replaced as a whole, lists included.
+ */
+@Data
+public class ContentDelta {
+  // fields which are new or replaced
+  @Nullable private Map<String, Object> set;
+  // fields which are gone
+  @Nullable private List<String> unset;
+  // objects with changes further down
+  @Nullable private Map<String, ContentDelta> nested;
+}
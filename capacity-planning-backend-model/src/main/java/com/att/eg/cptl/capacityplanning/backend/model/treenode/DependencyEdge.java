@@ -0,0 +1,27 @@
+package com.att.eg.cptl.capacityplanning.backend.model.treenode;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.lang.Nullable;
+
+/**
+ * An edge of the dependency graph: the dependent node, or one of its releases, depends on the
+ * dependency. There is one edge for each entry of the dependent's processDependencies, which
+ * includes the dependencies of its dependencies. Only edges of direct dependencies carry how the
+ * dependency is tracked.
+ */
+@Data
+@Document
+public class DependencyEdge {
+  @Id private String id;
+  private String dependentId;
+  private NodeType dependentType;
+  // null for the current version of the dependent
+  @Nullable private Long dependentReleaseNr;
+  private String dependencyId;
+  private boolean direct;
+  @Nullable private TrackingMode trackingMode;
+  @Nullable private Long releaseNr;
+  @Nullable private Boolean trashed;
+}
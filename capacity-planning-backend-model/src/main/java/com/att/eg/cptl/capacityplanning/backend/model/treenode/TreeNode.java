@@ -20,17 +20,28 @@ public class TreeNode
   private NodeType type;
   private Map<String, Object> content;
   private List<String> ancestors;
+  // the last of the ancestors, kept alongside them for the unique index on the names of siblings
+  @Nullable private String parentId;
   private String description;
   private String ownerId;
   private AccessControlType accessControl;
   private List<AccessPermission> acl;
-  @Nullable private Boolean trashed;
+  // owner, type and acl of the nearest non-inheriting node (this one or an ancestor)
+  private AggregatedAccessControlInformation effectiveAccessControl;
+  // nodes which aren't trashed are stored with false, the unique index on names only covers those
+  @Nullable private Boolean trashed = false;
   private ZonedDateTime trashedDate;
   private List<String> processDependencies;
   @Version private Long version;
   @LastModifiedDate private Date lastModifiedDate;
   private List<TreeNodeAncestor> augmentedAncestors;
 
+  public void setAncestors(List<String> ancestors) {
+    this.ancestors = ancestors;
+    this.parentId =
+        ancestors == null || ancestors.isEmpty() ? null : ancestors.get(ancestors.size() - 1);
+  }
+
   @Override
   public boolean isNew() {
     return id == null;
@@ -50,7 +61,7 @@ public class TreeNode
     }
     cpy.setDescription(treeNode.getDescription());
     cpy.setOwnerId(treeNode.getOwnerId());
-    cpy.setTrashed(treeNode.getTrashed());
+    cpy.setTrashed(Boolean.TRUE.equals(treeNode.getTrashed()));
     if (treeNode.getTrashedDate() != null) {
       cpy.setTrashedDate(treeNode.getTrashedDate());
     }
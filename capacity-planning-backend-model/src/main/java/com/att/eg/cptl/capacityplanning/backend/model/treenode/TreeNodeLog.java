@@ -33,6 +33,15 @@ public class TreeNodeLog implements TreeNodeBase {
   private String baseNodeId;
   private List<String> tags;
   private String logComment;
+  // versions other than every few ones store their content as a delta against the previous version
+  // instead, releases always store the full content
+  @Nullable private ContentDelta contentDelta;
+  @Nullable private Long deltaBaseVersion;
+  // the number of deltas to apply to the nearest full version to get the content, 0 if it's full
+  @Nullable private Integer deltaDepth;
+  // set on a version which is about to be removed since a newer version takes its place, versions
+  // encoded against it by other instances meanwhile store their full content instead
+  @Nullable private Boolean replaced;
 
   public static TreeNodeLog from(TreeNodeBase treeNode) {
     TreeNodeLog cpy = new TreeNodeLog();
@@ -4,15 +4,18 @@ import com.att.eg.cptl.capacityplanning.backend.controller.util.accesscontrol.Ac
 import com.att.eg.cptl.capacityplanning.backend.dao.*;
 import com.att.eg.cptl.capacityplanning.backend.exception.UnauthorizedException;
 import com.att.eg.cptl.capacityplanning.backend.model.AppUser;
-import com.att.eg.cptl.capacityplanning.backend.model.UserGroup;
+import com.att.eg.cptl.capacityplanning.backend.model.auth.AccessPrincipal;
 import com.att.eg.cptl.capacityplanning.backend.model.converter.DtoToModelConverter;
 import com.att.eg.cptl.capacityplanning.backend.model.converter.ModelToDtoConverter;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.AccessControlType;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.AggregatedAccessControlInformation;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.BaseNodeInfo;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.Permission;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNode;
 import java.util.*;
 import java.util.stream.Collectors;
 import javax.annotation.Resource;
+import org.springframework.lang.Nullable;
 
 public class TreeNodeBaseService {
   private TreeNodeRepository treeNodeRepository;
@@ -23,7 +26,7 @@ public class TreeNodeBaseService {
 
   @Resource private AccessControlUtil accessControlUtil;
 
-  @Resource private UserGroupRepository userGroupRepository;
+  @Resource private UserGroupService userGroupService;
 
   @Resource private UserMongoRepository userMongoRepository;
 
@@ -37,14 +40,9 @@ public class TreeNodeBaseService {
       throw new NoSuchElementException("no such tree node");
     }
 
-    List<TreeNode> ancestors = getAncestors(node);
-    List<UserGroup> usersGroups = userGroupRepository.findByUserId(user.getId());
-
-    List<String> usersGroupIds =
-        usersGroups == null
-            ? Collections.emptyList()
-            : usersGroups.stream().map(UserGroup::getId).collect(Collectors.toList());
-    List<Permission> usersPermissionsForThisNode =
+    List<TreeNode> ancestors = getAncestorsForAccessCheck(node);
+    Set<String> usersGroupIds = getUserGroupIds(user);
+    Set<Permission> usersPermissionsForThisNode =
         accessControlUtil.getCurrentUsersPermissionsForThisNode(
             user, node, ancestors, usersGroupIds);
 
@@ -60,12 +58,25 @@ public class TreeNodeBaseService {
     return bni;
   }
 
-  protected List<Permission> getNodePermissionsForUser(String nodeId, AppUser user) {
+  /**
+   * The ids of the groups a user is a member of. Served from the group membership cache, so it's
+   * fine to call this once per request.
+   */
+  protected Set<String> getUserGroupIds(AppUser user) {
+    return userGroupService.getUserGroupIdsForUser(user.getId());
+  }
+
+  /** The principal to hand to repository queries which filter by access rights. */
+  protected AccessPrincipal getAccessPrincipal(AppUser user) {
+    return new AccessPrincipal(user.getId(), getUserGroupIds(user), user.getRole());
+  }
+
+  protected Set<Permission> getNodePermissionsForUser(String nodeId, AppUser user) {
     return this.getNodeForUser(nodeId, user, true).getPermissions();
   }
 
   protected boolean hazPermission(BaseNodeInfo baseInfo, Permission p) {
-    return baseInfo.getPermissions().indexOf(p) >= 0;
+    return baseInfo.getPermissions().contains(p);
   }
 
   protected void assertPermission(BaseNodeInfo baseInfo, Permission p) {
@@ -85,20 +96,124 @@ public class TreeNodeBaseService {
     return ancestorNodes;
   }
 
-  protected Map<String, List<TreeNode>> getAncestorMap(List<TreeNode> nodes) {
-    Map<String, List<TreeNode>> ancestorMap = new HashMap<>();
-    Map<String, TreeNode> ancestors = new HashMap<>();
-    for (TreeNode node : nodes) {
-      for (String ancestorId : node.getAncestors()) {
-        ancestors.putIfAbsent(ancestorId, null);
-      }
+  /**
+   * Fetches the ancestors required to check the permissions on a node. The parent is always
+   * included as the last element, the other ancestors only if the node inherits its access control
+   * but doesn't carry its effective access control yet.
+   *
+   * @param node The node to check the permissions on.
+   * @return The ancestors, ordered from the root down.
+   */
+  protected List<TreeNode> getAncestorsForAccessCheck(TreeNode node) {
+    if (needsAncestorsForAccessCheck(node)) {
+      return getAncestors(node);
     }
-    List<TreeNode> ancestorNodes =
+    List<String> ancestorIds = node.getAncestors();
+    if (ancestorIds == null || ancestorIds.isEmpty()) {
+      return new ArrayList<>();
+    }
+    return new ArrayList<>(
         treeNodeRepository.getNodes(
-            TreeNodeRepositoryCustom.ProjectionType.SPARSE, ancestors.keySet());
-    for (TreeNode augAnc : ancestorNodes) {
-      ancestors.put(augAnc.getId(), augAnc);
+            TreeNodeRepositoryCustom.ProjectionType.SPARSE,
+            Collections.singletonList(ancestorIds.get(ancestorIds.size() - 1))));
+  }
+
+  private boolean needsAncestorsForAccessCheck(TreeNode node) {
+    return node.getAccessControl() == AccessControlType.INHERIT
+        && node.getEffectiveAccessControl() == null;
+  }
+
+  /**
+   * Gets the effective access control of a node, falling back to walking the ancestors for nodes
+   * which don't carry it.
+   *
+   * @param node The node.
+   * @return The effective access control, null if it can't be determined.
+   */
+  protected AggregatedAccessControlInformation getEffectiveAccessControl(TreeNode node) {
+    if (node.getEffectiveAccessControl() != null) {
+      return node.getEffectiveAccessControl();
+    }
+    if (node.getAccessControl() != AccessControlType.INHERIT) {
+      return accessControlUtil.getEffectiveAccessControl(node, null);
+    }
+    return accessControlUtil.getAggregatedAccessControl(node, getAncestors(node));
+  }
+
+  /**
+   * Works out the effective access control of new or changed nodes and sets it on them. The nodes
+   * aren't saved.
+   *
+   * @param nodes The nodes. Nodes may inherit from other nodes in the list.
+   * @param knownAncestors Nodes outside of the list which nodes in the list may inherit from.
+   */
+  protected void assignEffectiveAccessControl(
+      List<TreeNode> nodes, Collection<TreeNode> knownAncestors) {
+    Map<String, AggregatedAccessControlInformation> inherited = new HashMap<>();
+    for (TreeNode ancestor : knownAncestors) {
+      AggregatedAccessControlInformation effectiveAccessControl =
+          getEffectiveAccessControl(ancestor);
+      if (effectiveAccessControl != null) {
+        inherited.put(ancestor.getId(), effectiveAccessControl);
+      }
     }
+    Map<String, AggregatedAccessControlInformation> effectiveAccessControl =
+        accessControlUtil.getEffectiveAccessControl(nodes, inherited);
+    nodes.forEach(node -> node.setEffectiveAccessControl(effectiveAccessControl.get(node.getId())));
+  }
+
+  /**
+   * Brings the effective access control of a node's descendants in line after the node's own
+   * effective access control changed. Descendants which took it from the same source as the node
+   * are rewritten with a single update. If the previous effective access control isn't known the
+   * whole subtree is worked out again.
+   *
+   * @param node The node, carrying its new effective access control.
+   * @param previous The node's effective access control before the change.
+   */
+  protected void propagateEffectiveAccessControl(
+      TreeNode node, @Nullable AggregatedAccessControlInformation previous) {
+    AggregatedAccessControlInformation current = node.getEffectiveAccessControl();
+    if (Objects.equals(previous, current)) {
+      return;
+    }
+    if (previous != null && previous.getNodeId() != null && current != null) {
+      treeNodeRepository.replaceEffectiveAccessControl(node.getId(), previous.getNodeId(), current);
+      return;
+    }
+    updateEffectiveAccessControl(
+        treeNodeRepository.getAccessControlledDescendants(node.getId()),
+        current != null
+            ? Collections.singletonMap(node.getId(), current)
+            : Collections.emptyMap());
+  }
+
+  /**
+   * Works out and stores the effective access control of a batch of nodes, with one update per
+   * distinct effective access control.
+   *
+   * @param nodes The nodes.
+   * @param inherited The effective access control of nodes outside of the batch that nodes in the
+   *     batch may inherit from, mapped by node id.
+   */
+  protected void updateEffectiveAccessControl(
+      List<TreeNode> nodes, Map<String, AggregatedAccessControlInformation> inherited) {
+    Map<String, AggregatedAccessControlInformation> effectiveAccessControl =
+        accessControlUtil.getEffectiveAccessControl(nodes, inherited);
+    Map<AggregatedAccessControlInformation, List<String>> nodeIdsByAccessControl = new HashMap<>();
+    effectiveAccessControl.forEach(
+        (nodeId, accessControl) ->
+            nodeIdsByAccessControl
+                .computeIfAbsent(accessControl, ac -> new ArrayList<>())
+                .add(nodeId));
+    nodeIdsByAccessControl.forEach(
+        (accessControl, nodeIds) ->
+            treeNodeRepository.setEffectiveAccessControl(nodeIds, accessControl));
+  }
+
+  protected Map<String, List<TreeNode>> getAncestorMap(List<TreeNode> nodes) {
+    Map<String, List<TreeNode>> ancestorMap = new HashMap<>();
+    Map<String, TreeNode> ancestors = getAncestorsById(nodes);
     for (TreeNode node : nodes) {
       List<TreeNode> nodesAncestors =
           node.getAncestors().stream().map(ancestors::get).collect(Collectors.toList());
@@ -107,6 +222,45 @@ public class TreeNodeBaseService {
     return ancestorMap;
   }
 
+  /**
+   * Fetches the union of the ancestors of all given nodes with a single query.
+   *
+   * @param nodes The nodes to get the ancestors for.
+   * @return The sparse ancestor nodes, mapped by their ids.
+   */
+  protected Map<String, TreeNode> getAncestorsById(Collection<TreeNode> nodes) {
+    Set<String> ancestorIds = new HashSet<>();
+    for (TreeNode node : nodes) {
+      ancestorIds.addAll(node.getAncestors());
+    }
+    Map<String, TreeNode> ancestors = new HashMap<>();
+    if (ancestorIds.isEmpty()) {
+      return ancestors;
+    }
+    List<TreeNode> ancestorNodes =
+        treeNodeRepository.getNodes(TreeNodeRepositoryCustom.ProjectionType.SPARSE, ancestorIds);
+    for (TreeNode ancestor : ancestorNodes) {
+      ancestors.put(ancestor.getId(), ancestor);
+    }
+    return ancestors;
+  }
+
+  /**
+   * Evaluates the permissions of a user for a batch of nodes, fetching all required ancestors at
+   * once. Only nodes which don't carry their effective access control need their ancestors.
+   *
+   * @param user The user to evaluate the permissions for.
+   * @param nodes The nodes to evaluate.
+   * @return The permissions of the user, mapped by node id.
+   */
+  protected Map<String, Set<Permission>> evaluatePermissions(
+      AppUser user, Collection<TreeNode> nodes) {
+    List<TreeNode> nodesNeedingAncestors =
+        nodes.stream().filter(this::needsAncestorsForAccessCheck).collect(Collectors.toList());
+    return accessControlUtil.evaluate(
+        user, getUserGroupIds(user), nodes, getAncestorsById(nodesNeedingAncestors));
+  }
+
   /**
    * Generate a GUID String.
    *
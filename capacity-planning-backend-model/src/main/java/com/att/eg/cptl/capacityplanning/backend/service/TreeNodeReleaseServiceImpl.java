@@ -10,10 +10,13 @@ import com.att.eg.cptl.capacityplanning.backend.model.AppUser;
 import com.att.eg.cptl.capacityplanning.backend.model.converter.DtoToModelConverter;
 import com.att.eg.cptl.capacityplanning.backend.model.converter.ModelToDtoConverter;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.*;
+import com.att.eg.cptl.capacityplanning.backend.service.util.treenode.DependencyOps;
+import com.att.eg.cptl.capacityplanning.backend.service.util.treenode.DependencyResolver;
 import com.att.eg.cptl.capacityplanning.backend.service.util.treenode.DtoOps;
 import com.att.eg.cptl.capacityplanning.backend.service.util.treenode.NodeLogOps;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import javax.annotation.Resource;
 import org.springframework.stereotype.Service;
@@ -22,6 +25,7 @@ import org.springframework.stereotype.Service;
 public class TreeNodeReleaseServiceImpl extends TreeNodeBaseService
     implements TreeNodeReleaseService {
 
+  private final TreeNodeRepository treeNodeRepository;
   private final TreeNodeLogRepository treeNodeLogRepository;
 
   @Resource private ModelToDtoConverter modelToDtoConverter;
@@ -32,19 +36,15 @@ public class TreeNodeReleaseServiceImpl extends TreeNodeBaseService
 
   @Resource private TreeNodeContentValidationUtil treeNodeContentValidationUtil;
 
+  @Resource private DependencyEdgeRepository dependencyEdgeRepository;
+
   public TreeNodeReleaseServiceImpl(
       TreeNodeRepository treeNodeRepository, TreeNodeLogRepository treeNodeLogRepository) {
     super(treeNodeRepository);
+    this.treeNodeRepository = treeNodeRepository;
     this.treeNodeLogRepository = treeNodeLogRepository;
   }
 
-  protected TreeNodeBase getDepNode(TreeNodeDependency dep) {
-    if (dep.getReleaseNr() != null && dep.getTrackingMode() == TrackingMode.FIXED) {
-      return this.treeNodeLogRepository.findRelease(dep.getRef(), dep.getReleaseNr(), true);
-    }
-    return null;
-  }
-
   @Override
   public TreeNodeReleaseDto createRelease(TreeNodeReleaseDto releaseDto, AppUser user) {
     BaseNodeInfo baseNodeInfo = getNodeForUser(releaseDto.getObjectId(), user, true);
@@ -66,7 +66,11 @@ public class TreeNodeReleaseServiceImpl extends TreeNodeBaseService
         dtoToModelConverter.convertDtoToTreeNode(releaseDto.getTreeNode(), baseNode.getAncestors());
     tn.setVersion(baseNode.getVersion());
 
-    List<String> deepDependencies = getDeepNodeDependencies(tn, this::getDepNode);
+    // releases may only depend on fixed releases of other nodes
+    DependencyResolver dependencyResolver =
+        new DependencyResolver(
+            treeNodeRepository, treeNodeLogRepository, EnumSet.of(TrackingMode.FIXED));
+    List<String> deepDependencies = getDeepNodeDependencies(tn, dependencyResolver);
     if (deepDependencies.contains(tn.getId())) {
       throw new IllegalArgumentException("there is a cyclic dependency in this release");
     }
@@ -75,9 +79,11 @@ public class TreeNodeReleaseServiceImpl extends TreeNodeBaseService
     TreeNodeLog tnl =
         treeNodeLogRepository.insertRelease(
             NodeLogOps.create(tn, user, releaseDto.getDescription()));
+    dependencyEdgeRepository.insertEdges(DependencyOps.getDependencyEdges(tnl));
 
     TreeNodeReleaseDto savedDto = modelToDtoConverter.convertToTreeNodeReleaseDto(tnl);
-    savedDto.setCurrentUserAccessPermissions(baseNodeInfo.getPermissions());
+    savedDto.setCurrentUserAccessPermissions(
+        modelToDtoConverter.toPermissionList(baseNodeInfo.getPermissions()));
     DtoOps.lookupOwnerNames(Collections.singletonList(savedDto), this.userMongoRepository);
     return savedDto;
   }
@@ -96,7 +102,8 @@ public class TreeNodeReleaseServiceImpl extends TreeNodeBaseService
     for (TreeNodeLog releaseToAdd : releases) {
       TreeNodeReleaseDto dto = modelToDtoConverter.convertToTreeNodeReleaseDto(releaseToAdd);
       dto.setDescription(releaseToAdd.getLogComment());
-      dto.setCurrentUserAccessPermissions(baseNodeInfo.getPermissions());
+      dto.setCurrentUserAccessPermissions(
+          modelToDtoConverter.toPermissionList(baseNodeInfo.getPermissions()));
       availableReleases.add(dto);
     }
     DtoOps.lookupOwnerNames(availableReleases, this.userMongoRepository);
@@ -113,7 +120,8 @@ public class TreeNodeReleaseServiceImpl extends TreeNodeBaseService
     assertPermission(baseNodeInfo, Permission.READ);
 
     TreeNodeReleaseDto dto = modelToDtoConverter.convertToTreeNodeReleaseDto(release);
-    dto.setCurrentUserAccessPermissions(baseNodeInfo.getPermissions());
+    dto.setCurrentUserAccessPermissions(
+        modelToDtoConverter.toPermissionList(baseNodeInfo.getPermissions()));
     DtoOps.lookupOwnerNames(Collections.singletonList(dto), this.userMongoRepository);
 
     return dto;
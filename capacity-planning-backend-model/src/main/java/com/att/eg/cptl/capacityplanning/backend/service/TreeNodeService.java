@@ -5,6 +5,7 @@ import com.att.eg.cptl.capacityplanning.backend.dto.treenode.TreeNodeDto;
 import com.att.eg.cptl.capacityplanning.backend.dto.treenode.TreeNodeVersionDto;
 import com.att.eg.cptl.capacityplanning.backend.model.*;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.NodeType;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNode;
 import java.util.Date;
 import java.util.List;
 import javax.validation.constraints.Null;
@@ -30,6 +31,38 @@ public interface TreeNodeService {
       Boolean sparseChildren,
       AppUser user);
 
+  /**
+   * Get the entity tag of what {@link #getNode} returns for a node without children, without
+   * reading the node in full. It's derived from the id, the version, the ancestors and the
+   * effective access control of the node, and the user's permissions on it. Releases and versions
+   * are tagged by their stored log entry as well. Moving the node changes the tag, changes to the
+   * ancestors themselves, e.g. renaming one, don't.
+   *
+   * @param id The id of the node, release or version.
+   * @param showTrash As for getNode.
+   * @param sparse As for getNode.
+   * @param user The user who initiated the retrieval.
+   * @return The quoted entity tag. null if the node can't be tagged, because it doesn't exist, the
+   *     user may not read it or it doesn't carry its effective access control yet, or a version is
+   *     still served from the node itself.
+   */
+  @Nullable
+  String getNodeETag(String id, Boolean showTrash, Boolean sparse, AppUser user);
+
+  /**
+   * Get the entity tag of the content of a node, release or version which isn't trashed. It's
+   * derived from the id and the version of the node or the stored log entry only, so it's the same
+   * for all users who may read the node.
+   *
+   * @param id The id of the node, release or version.
+   * @param user The user who initiated the retrieval.
+   * @return The quoted entity tag. null if the content can't be tagged, because the node doesn't
+   *     exist, is trashed, the user may not read it or it doesn't carry its effective access
+   *     control yet, or a version is still served from the node itself.
+   */
+  @Nullable
+  String getNodeContentETag(String id, AppUser user);
+
   List<TreeNodeDto> getTrashedNodes(String rootNodeId, AppUser user);
 
   /**
@@ -50,8 +83,9 @@ public interface TreeNodeService {
    * @param id The id of the node to recover.
    * @param versionNumber Optional version number to check for conflicts.
    * @param user The user who initiated the recovery.
+   * @return A list of IDs of the nodes restored
    */
-  TreeNodeDto restoreNodeFromTrash(String id, Long versionNumber, AppUser user);
+  List<String> restoreNodeFromTrash(String id, Long versionNumber, AppUser user);
 
   /**
    * Create a new tree node.
@@ -114,13 +148,32 @@ public interface TreeNodeService {
       AppUser user,
       @Null String description);
 
-  void moveNode(String nodeId, Long versionNumber, String newParentId, AppUser user);
+  /**
+   * Move a node and its whole subtree below a new parent.
+   *
+   * @return The number of moved nodes, the node itself included.
+   */
+  long moveNode(String nodeId, Long versionNumber, String newParentId, AppUser user);
 
   TreeNodeDto copyNode(
       String nodeId, Long versionNumber, String newParentId, String newNodeName, AppUser user);
 
   TreeNodeDto copyFolder(String folderId, String newFolderName, AppUser user);
 
+  /**
+   * Work out the effective access control of a node and all of its descendants again and store it.
+   *
+   * @param nodeId The ID of the node at the top of the subtree.
+   */
+  void refreshEffectiveAccessControl(String nodeId);
+
+  /**
+   * Work out the effective access control of nodes which don't carry it yet and store it.
+   *
+   * @param nodes The nodes, with at least their ancestors and access control.
+   */
+  void fillInEffectiveAccessControl(List<TreeNode> nodes);
+
   List<TreeNodeTrackingInfo> getTrackingInfo(
       AppUser user,
       @Nullable Date updatedAfter,
@@ -8,6 +8,7 @@ import com.att.eg.cptl.capacityplanning.backend.controller.util.trash.TrashUtil;
 import com.att.eg.cptl.capacityplanning.backend.controller.util.treenode.TreeNodeContentValidationUtil;
 import com.att.eg.cptl.capacityplanning.backend.dao.*;
 import com.att.eg.cptl.capacityplanning.backend.dto.treenode.AccessPermissionDto;
+import com.att.eg.cptl.capacityplanning.backend.dto.treenode.BlockingDependentDto;
 import com.att.eg.cptl.capacityplanning.backend.dto.treenode.TreeNodeDto;
 import com.att.eg.cptl.capacityplanning.backend.dto.treenode.TreeNodeVersionDto;
 import com.att.eg.cptl.capacityplanning.backend.exception.BadRequestException;
@@ -17,20 +18,27 @@ import com.att.eg.cptl.capacityplanning.backend.exception.ForbiddenException;
 import com.att.eg.cptl.capacityplanning.backend.exception.NotFoundException;
 import com.att.eg.cptl.capacityplanning.backend.exception.TrashStateException;
 import com.att.eg.cptl.capacityplanning.backend.exception.VersionConflictException;
+import com.att.eg.cptl.capacityplanning.backend.jobs.VersionLogWriter;
 import com.att.eg.cptl.capacityplanning.backend.model.*;
+import com.att.eg.cptl.capacityplanning.backend.model.auth.AccessPrincipal;
 import com.att.eg.cptl.capacityplanning.backend.model.converter.DtoToModelConverter;
 import com.att.eg.cptl.capacityplanning.backend.model.converter.ModelToDtoConverter;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.*;
-import com.att.eg.cptl.capacityplanning.backend.model.treenode.AccessControlledTreeObject;
 import com.att.eg.cptl.capacityplanning.backend.service.util.treenode.*;
+import com.google.common.hash.Hashing;
 import com.mongodb.client.result.UpdateResult;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import javax.annotation.Resource;
 import javax.validation.constraints.Null;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.NonTransientDataAccessException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.lang.Nullable;
@@ -39,7 +47,10 @@ import org.springframework.stereotype.Service;
 @SuppressWarnings("squid:S1066")
 @Service
 public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNodeService {
+  private static final Logger LOGGER = LogManager.getLogger(TreeNodeServiceImpl.class);
   private static final String TREE_NODE_NOT_FOUND_MESSAGE = "Tree node not found.";
+  private static final String NAME_EXISTS_MESSAGE =
+      "A node with this name already exists. Please choose a different name.";
 
   private final TreeNodeRepository treeNodeRepository;
   private final TreeNodeLogRepository treeNodeLogRepository;
@@ -56,8 +67,14 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
 
   @Resource private TrashUtil trashUtil;
 
+  @Resource private DependencyEdgeRepository dependencyEdgeRepository;
+
+  @Resource private VersionLogWriter versionLogWriter;
+
   @Resource private TreeNodeContentValidationUtil treeNodeContentValidationUtil;
 
+  @Resource private ContentStore contentStore;
+
   @Autowired
   public TreeNodeServiceImpl(
       TreeNodeRepository treeNodeRepository, TreeNodeLogRepository treeNodeLogRepository) {
@@ -66,24 +83,9 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
     this.treeNodeLogRepository = treeNodeLogRepository;
   }
 
-  protected TreeNodeBase getDepNode(TreeNodeDependency dep) {
-    if (dep.getTrackingMode() == null) {
-      return null;
-    }
-    switch (dep.getTrackingMode()) {
-      case FIXED:
-        if (dep.getReleaseNr() == null) {
-          return null;
-        }
-        return this.treeNodeLogRepository.findRelease(dep.getRef(), dep.getReleaseNr(), true);
-      case LATEST_RELEASE:
-        TreeNodeBase rel = this.treeNodeLogRepository.findLatestRelease(dep.getRef(), true);
-        if (rel != null) return rel;
-        // else fall through
-      case CURRENT_VERSION:
-        return this.treeNodeRepository.getNode(dep.getRef(), true);
-    }
-    return null;
+  private DependencyResolver createDependencyResolver() {
+    return new DependencyResolver(
+        treeNodeRepository, treeNodeLogRepository, EnumSet.allOf(TrackingMode.class));
   }
 
   @Override
@@ -109,6 +111,7 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
       node = release != null ? release.asTreeNode() : null;
 
     } else if (cId.isVersion()) {
+      versionLogWriter.flush(cId.getNodeId());
       TreeNodeLog version =
           treeNodeLogRepository.findVersion(cId.getNodeId(), cId.getVersionId(), sparse);
       TreeNode versionNode = version != null ? version.asTreeNode() : null;
@@ -133,32 +136,26 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
       throw new TrashStateException("Cannot get a node with a diverting request trash state.");
     }
 
-    List<TreeNode> ancestors = getAncestors(node);
+    List<TreeNode> ancestors = getAncestorsForAccessCheck(node);
 
     List<TreeNodeDto> output = new ArrayList<>();
-    List<Permission> usersPermissionsForThisNode = bni.getPermissions();
+    Set<Permission> usersPermissionsForThisNode = bni.getPermissions();
     if (!usersPermissionsForThisNode.contains(Permission.READ)) {
       throw new NotFoundException(TREE_NODE_NOT_FOUND_MESSAGE);
     }
 
     if (withChildren) {
-      List<UserGroup> usersGroups = userGroupRepository.findByUserId(user.getId());
-      List<String> usersGroupIds =
-          usersGroups == null
-              ? Collections.emptyList()
-              : usersGroups.stream().map(UserGroup::getId).collect(Collectors.toList());
-
+      // unreadable children are filtered out by the query already, the evaluation provides the
+      // permissions for the dtos and covers children whose effective access control isn't known
       List<TreeNode> childNodes =
-          treeNodeRepository.getChildren(node.getId(), node.getAncestors().size(), sparseChildren);
+          treeNodeRepository.getChildren(
+              node.getId(), node.getAncestors().size(), sparseChildren, getAccessPrincipal(user));
+      Map<String, Set<Permission>> permissions = evaluatePermissions(user, childNodes);
       childNodes.forEach(
           child -> {
             boolean childTrashed = child.getTrashed() != null ? child.getTrashed() : false;
             if (getTrashed == childTrashed) {
-              List<AccessControlledTreeObject> childAncestors = new ArrayList<>(ancestors);
-              childAncestors.add(node);
-              List<Permission> childPermissions =
-                  accessControlUtil.getCurrentUsersPermissionsForThisNode(
-                      user, child, childAncestors, usersGroupIds);
+              Set<Permission> childPermissions = permissions.get(child.getId());
               TreeNodeDto childDto = modelToDtoConverter.createTreeNodeDto(child, childPermissions);
               childDto.setParentId(node.getId());
               childDto.setParentType(node.getType());
@@ -179,23 +176,100 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
     return output;
   }
 
+  @Override
+  @Nullable
+  public String getNodeETag(String id, Boolean showTrash, Boolean sparse, AppUser user) {
+    CombinedId cId = new CombinedId(id);
+    TreeNode node = treeNodeRepository.getNodeVersion(cId.getNodeId());
+    Set<Permission> permissions = getReadPermissions(node, user);
+    if (permissions == null) {
+      return null;
+    }
+    String servedVersion = getServedVersion(cId, node);
+    if (servedVersion == null) {
+      return null;
+    }
+    // moves don't change the version, but the ancestors and parent are sent along with nodes,
+    // releases and versions
+    return toETag(
+        id,
+        servedVersion,
+        String.valueOf(node.getAncestors()),
+        String.valueOf(node.getParentId()),
+        String.valueOf(trashUtil.isItemTrashed(node)),
+        String.valueOf(showTrash),
+        String.valueOf(sparse),
+        node.getEffectiveAccessControl().toString(),
+        new TreeSet<>(permissions).toString());
+  }
+
+  @Override
+  @Nullable
+  public String getNodeContentETag(String id, AppUser user) {
+    CombinedId cId = new CombinedId(id);
+    TreeNode node = treeNodeRepository.getNodeVersion(cId.getNodeId());
+    if (getReadPermissions(node, user) == null || trashUtil.isItemTrashed(node)) {
+      return null;
+    }
+    String servedVersion = getServedVersion(cId, node);
+    return servedVersion != null ? toETag(id, servedVersion, "content") : null;
+  }
+
+  /**
+   * Tells apart what's served for an id: the version of a node, or the stored release or version,
+   * which may be renamed, described or removed and stored again.
+   *
+   * @return null if there is nothing to tag, because there is no such release or version, or the
+   *     version isn't in the log yet and is still served from the node itself.
+   */
+  @Nullable
+  private String getServedVersion(CombinedId cId, TreeNode node) {
+    if (cId.isNode()) {
+      return String.valueOf(node.getVersion());
+    }
+    TreeNodeLog logEntry = treeNodeLogRepository.findLogEntryVersion(cId);
+    if (logEntry == null) {
+      return null;
+    }
+    return String.join(
+        "|",
+        logEntry.getId(),
+        String.valueOf(logEntry.getVersion()),
+        String.valueOf(logEntry.getName()),
+        String.valueOf(logEntry.getLogComment()),
+        String.valueOf(logEntry.getLastModifiedDate()),
+        String.valueOf(logEntry.getLogDate()));
+  }
+
+  /**
+   * @return The user's permissions on the node. null if the node doesn't exist, doesn't carry its
+   *     effective access control yet or the user may not read it.
+   */
+  @Nullable
+  private Set<Permission> getReadPermissions(@Nullable TreeNode node, AppUser user) {
+    if (node == null || node.getEffectiveAccessControl() == null) {
+      return null;
+    }
+    Set<Permission> permissions =
+        evaluatePermissions(user, Collections.singletonList(node)).get(node.getId());
+    return permissions != null && permissions.contains(Permission.READ) ? permissions : null;
+  }
+
+  private static String toETag(String... tagSource) {
+    return "\""
+        + Hashing.sha256().hashString(String.join("|", tagSource), StandardCharsets.UTF_8)
+        + "\"";
+  }
+
   @Override
   public List<TreeNodeDto> getTrashedNodes(String rootNodeId, AppUser user) {
     List<TreeNode> trashedNodes = treeNodeRepository.listTrash(rootNodeId, user.getId());
-    List<UserGroup> usersGroups = userGroupRepository.findByUserId(user.getId());
-    Map<String, List<TreeNode>> ancestors = getAncestorMap(trashedNodes);
-
-    List<String> usersGroupIds =
-        usersGroups == null
-            ? Collections.emptyList()
-            : usersGroups.stream().map(UserGroup::getId).collect(Collectors.toList());
+    Map<String, Set<Permission>> permissions = evaluatePermissions(user, trashedNodes);
 
     List<TreeNodeDto> output = new ArrayList<>();
 
     for (TreeNode trashedNode : trashedNodes) {
-      List<Permission> nodePermissions =
-          accessControlUtil.getCurrentUsersPermissionsForThisNode(
-              user, trashedNode, ancestors.get(trashedNode.getId()), usersGroupIds);
+      Set<Permission> nodePermissions = permissions.get(trashedNode.getId());
       if (nodePermissions.contains(Permission.DELETE)) {
         output.add(modelToDtoConverter.createTreeNodeDto(trashedNode, nodePermissions));
       }
@@ -212,42 +286,63 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
       @Nullable NodeType nodeType) {
     List<TreeNodeTrackingInfo> dtos = new ArrayList<>();
 
-    List<String> idsToFetch = new ArrayList<>();
+    List<TreeNode> trackingNodes;
 
     if (nodeIds != null) {
-      idsToFetch.addAll(nodeIds);
+      trackingNodes =
+          new ArrayList<>(
+              treeNodeRepository.getNodes(TreeNodeRepositoryCustom.ProjectionType.SPARSE, nodeIds));
+      // keep the order in which the nodes were requested
+      trackingNodes.sort(Comparator.comparingInt(n -> nodeIds.indexOf(n.getId())));
+      Set<String> foundIds =
+          trackingNodes.stream().map(TreeNode::getId).collect(Collectors.toSet());
+      if (!foundIds.containsAll(nodeIds)) {
+        // as when the nodes were fetched one by one
+        throw new NoSuchElementException("no such tree node");
+      }
     } else {
+      AccessPrincipal principal = getAccessPrincipal(user);
       if (nodeType != null) {
-        List<TreeNode> trackingNodes =
+        trackingNodes =
             treeNodeRepository.getAll(
-                TreeNodeRepositoryCustom.ProjectionType.SPARSE, updatedAfter, nodeType);
-        idsToFetch.addAll(trackingNodes.stream().map(TreeNode::getId).collect(Collectors.toList()));
+                TreeNodeRepositoryCustom.ProjectionType.SPARSE, updatedAfter, principal, nodeType);
       } else {
-        List<TreeNode> trackingNodes =
+        trackingNodes =
             treeNodeRepository.getAll(
                 TreeNodeRepositoryCustom.ProjectionType.SPARSE,
                 updatedAfter,
+                principal,
                 NodeType.FC_SHEET,
                 NodeType.MODEL);
-        idsToFetch.addAll(trackingNodes.stream().map(TreeNode::getId).collect(Collectors.toList()));
       }
     }
 
-    for (String nodeId : idsToFetch) {
-      // fixme: optimize to only fetch ancestors/user names once
-      BaseNodeInfo bni = getNodeForUser(nodeId, user, true);
-      if (bni != null && hazPermission(bni, Permission.READ)) {
-        TreeNodeLog release = this.treeNodeLogRepository.findLatestRelease(nodeId, true);
-        TreeNodeTrackingInfo nti = modelToDtoConverter.createNodeTrackingInfo(bni.getTreeNode());
-        if (nti != null) {
-          nti.setPathName(bni.getParentName());
-          if (release != null) {
-            nti.setReleaseNr(release.getReleaseNr());
-            nti.setProcessDependencies(release.getProcessDependencies());
-          }
-          ;
-          dtos.add(nti);
+    // ancestors, group memberships and releases are fetched once for all nodes
+    Map<String, TreeNode> ancestors = getAncestorsById(trackingNodes);
+    Map<String, Set<Permission>> permissions =
+        accessControlUtil.evaluate(user, getUserGroupIds(user), trackingNodes, ancestors);
+    List<TreeNode> readableNodes =
+        trackingNodes
+            .stream()
+            .filter(n -> permissions.get(n.getId()).contains(Permission.READ))
+            .collect(Collectors.toList());
+    Map<String, TreeNodeLog> releases =
+        treeNodeLogRepository.findLatestReleases(
+            readableNodes.stream().map(TreeNode::getId).collect(Collectors.toList()), true);
+
+    for (TreeNode node : readableNodes) {
+      TreeNodeLog release = releases.get(node.getId());
+      TreeNodeTrackingInfo nti = modelToDtoConverter.createNodeTrackingInfo(node);
+      if (nti != null) {
+        TreeNode parentNode = nti.getParentId() != null ? ancestors.get(nti.getParentId()) : null;
+        if (parentNode != null) {
+          nti.setPathName(parentNode.getName());
         }
+        if (release != null) {
+          nti.setReleaseNr(release.getReleaseNr());
+          nti.setProcessDependencies(release.getProcessDependencies());
+        }
+        dtos.add(nti);
       }
     }
 
@@ -267,22 +362,22 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
     // fake a root node so we don't have to query it
     TreeNode fakeRoot = TreeOps.getFakeRoot();
 
-    // first get all folders and figure out which ones are accessible.
-    // for now we just assume all the subnode inherit the folders access permission
-    List<TreeNode> folders = treeNodeRepository.getChildren("root", 0, true);
-    List<UserGroup> usersGroups = userGroupRepository.findByUserId(user.getId());
+    AccessPrincipal principal = getAccessPrincipal(user);
+
+    // first get all folders the user can read. the query filters most of them already,
+    // only folders whose effective access control isn't known have to be checked here.
+    List<TreeNode> folders = treeNodeRepository.getChildren("root", 0, true, principal);
 
-    List<String> usersGroupIds =
-        usersGroups == null
-            ? Collections.emptyList()
-            : usersGroups.stream().map(UserGroup::getId).collect(Collectors.toList());
+    Map<String, Set<Permission>> folderPermissions =
+        accessControlUtil.evaluate(
+            user,
+            getUserGroupIds(user),
+            folders,
+            Collections.singletonMap(fakeRoot.getId(), fakeRoot));
     accessibleFolders =
         folders
             .stream()
-            .filter(
-                f ->
-                    accessControlUtil.doesUserHaveReadPermission(
-                        user, f, Collections.singletonList(fakeRoot), usersGroupIds))
+            .filter(f -> folderPermissions.get(f.getId()).contains(Permission.READ))
             .collect(Collectors.toList());
 
     List<String> accessibleFolderIds =
@@ -291,7 +386,8 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
         accessibleFolders.stream().collect(Collectors.toMap(TreeNode::getId, TreeNode::getName));
 
     List<TreeNode> queriedNodes =
-        treeNodeRepository.searchNode(searchTerm, accessibleFolderIds, pageRequest, nodeTypes);
+        treeNodeRepository.searchNode(
+            searchTerm, accessibleFolderIds, pageRequest, nodeTypes, principal);
 
     for (TreeNode tn : queriedNodes) {
       TreeNodeTrackingInfo ti = modelToDtoConverter.createNodeTrackingInfo(tn);
@@ -366,10 +462,10 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
   @Override
   public List<String> deleteNode(String id, Long versionNumber, boolean remove, AppUser user) {
     TreeNode node = treeNodeRepository.getNode(id, true);
-    List<TreeNode> mainNodeAncestors = getAncestors(node);
     if (node == null) {
       throw new NotFoundException("TreeNode with id \"" + id + "\" not found");
     }
+    List<TreeNode> mainNodeAncestors = getAncestorsForAccessCheck(node);
     if (versionNumber == null) {
       throw new IllegalArgumentException("version number has to be supplied");
     }
@@ -378,12 +474,7 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
       return Collections.singletonList(id);
     }
 
-    List<UserGroup> usersGroups = userGroupRepository.findByUserId(user.getId());
-
-    List<String> usersGroupIds =
-        usersGroups == null
-            ? Collections.emptyList()
-            : usersGroups.stream().map(UserGroup::getId).collect(Collectors.toList());
+    Set<String> usersGroupIds = getUserGroupIds(user);
 
     if (!accessControlUtil.doesUserHaveDeletePermission(
         user, node, mainNodeAncestors, usersGroupIds)) {
@@ -392,59 +483,53 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
     }
     checkVersionNumber(node, versionNumber);
 
-    List<TreeNode> childNodes =
-        treeNodeRepository.getChildren(id, node.getAncestors().size(), true);
-
-    // collect all ids of nodes  that will be deleted as part of this operation
-    List<String> nodeIdsToBeDeleted = new ArrayList<>();
-    childNodes.forEach(childNodeReference -> nodeIdsToBeDeleted.add(childNodeReference.getId()));
-
-    nodeIdsToBeDeleted.add(node.getId());
-
-    // figure out if any graph models references any of the id's that we want to delete
-    nodeIdsToBeDeleted.forEach(
-        nodeId -> {
-          List<String> nodesWithDependentReleases =
-              treeNodeLogRepository.findDependentBaseNodeReleaseIds(nodeId);
-          nodesWithDependentReleases.forEach(
-              baseNodeId -> {
-                if (!nodeIdsToBeDeleted.contains(baseNodeId)) {
-                  throw new FailedDependencyException(
-                      "Reference to one of the items deleted exists in "
-                          + "the Release of another graph model. Can't perform update.");
-                }
-              });
-          List<TreeNode> dependentGraphModels =
-              treeNodeRepository.findDependentNodesByType("MODEL", nodeId);
-          dependentGraphModels.forEach(
-              depModel -> {
-                boolean isTrashedNode =
-                    depModel.getTrashed() != null ? depModel.getTrashed() : false;
-                // if the dependent model will be deleted as part of this operation
-                // as well we'll ignore the dependency
-                if (!nodeIdsToBeDeleted.contains(depModel.getId()) && !isTrashedNode) {
-                  throw new FailedDependencyException(
-                      "Reference to one of the items deleted exists in"
-                          + " another graph model. Can't perform update.");
-                }
-              });
-        });
+    // collect all ids of nodes that will be deleted as part of this operation. nodes which are in
+    // the trash already are only affected when removing
+    List<String> nodeIdsToBeDeleted = treeNodeRepository.getSubtreeIds(id, remove ? null : false);
+
+    // figure out if any graph models or releases of graph models reference any of the ids that we
+    // want to delete. dependents which will be deleted as part of this operation as well are
+    // ignored
+    Set<String> deletedNodeIds = new HashSet<>(nodeIdsToBeDeleted);
+    Map<String, BlockingDependentDto> blockingDependentsByKey = new LinkedHashMap<>();
+    for (DependencyEdge edge : dependencyEdgeRepository.findByDependencyIdIn(deletedNodeIds)) {
+      boolean isRelease = edge.getDependentReleaseNr() != null;
+      if (deletedNodeIds.contains(edge.getDependentId())
+          || (!isRelease
+              && (edge.getDependentType() != NodeType.MODEL
+                  || Boolean.TRUE.equals(edge.getTrashed())))) {
+        continue;
+      }
+      BlockingDependentDto blockingDependent =
+          blockingDependentsByKey.computeIfAbsent(
+              edge.getDependentId() + "@" + isRelease,
+              k -> new BlockingDependentDto(edge.getDependentId(), isRelease, new ArrayList<>()));
+      if (!blockingDependent.getDependencyIds().contains(edge.getDependencyId())) {
+        blockingDependent.getDependencyIds().add(edge.getDependencyId());
+      }
+    }
+    List<BlockingDependentDto> blockingDependents =
+        new ArrayList<>(blockingDependentsByKey.values());
+    if (!blockingDependents.isEmpty()) {
+      throw new FailedDependencyException(
+          "References to the items deleted exist in other graph models or their releases."
+              + " Can't perform update.",
+          blockingDependents);
+    }
 
     if (remove) {
-      treeNodeRepository.deleteById(id);
-      childNodes.forEach(
-          childNodeReference -> treeNodeRepository.deleteById(childNodeReference.getId()));
+      treeNodeRepository.removeSubtree(id);
+      dependencyEdgeRepository.removeEdges(nodeIdsToBeDeleted);
     } else {
-      trashUtil.trashItem(node, treeNodeRepository);
-
-      trashUtil.trashItems(childNodes, treeNodeRepository);
+      trashUtil.trashSubtree(node, treeNodeRepository);
+      dependencyEdgeRepository.setTrashed(nodeIdsToBeDeleted, true);
     }
 
     return nodeIdsToBeDeleted;
   }
 
   @Override
-  public TreeNodeDto restoreNodeFromTrash(String id, Long versionNumber, AppUser user) {
+  public List<String> restoreNodeFromTrash(String id, Long versionNumber, AppUser user) {
     TreeNode node = treeNodeRepository.getNode(id, true);
     if (node == null) {
       throw new NotFoundException("TreeNode with id \"" + id + "\" not found");
@@ -460,19 +545,14 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
 
     checkVersionNumber(node, versionNumber);
 
-    List<TreeNode> mainNodeAncestors = getAncestors(node);
+    List<TreeNode> mainNodeAncestors = getAncestorsForAccessCheck(node);
 
     TreeNode parent = mainNodeAncestors.get(mainNodeAncestors.size() - 1);
     if (parent.getTrashed() != null && parent.getTrashed()) {
       throw new TrashStateException("Cannot restore node which has a trashed parent.");
     }
 
-    List<UserGroup> usersGroups = userGroupRepository.findByUserId(user.getId());
-
-    List<String> usersGroupIds =
-        usersGroups == null
-            ? Collections.emptyList()
-            : usersGroups.stream().map(UserGroup::getId).collect(Collectors.toList());
+    Set<String> usersGroupIds = getUserGroupIds(user);
 
     if (!accessControlUtil.doesUserHaveModifyPermission(
         user, node, mainNodeAncestors, usersGroupIds)) {
@@ -480,28 +560,16 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
           "User does not have the privileges required to recover this node.");
     }
 
-    ArrayList<String> siblingNames = new ArrayList<String>();
-    List<TreeNode> siblingNodes = treeNodeRepository.getChildren(parent);
-    siblingNodes.forEach(
-        s -> {
-          siblingNames.add(s.getName());
-        });
-    if (siblingNames.contains(node.getName())) {
+    List<String> restoredNodeIds = treeNodeRepository.getSubtreeIds(node.getId(), true);
+    try {
+      restoredNodeIds.removeAll(treeNodeRepository.restoreSubtree(node.getId()));
+    } catch (DuplicateKeyException e) {
       throw new DocumentExistsException("A node with this name already exists. Cannot restore.");
     }
+    dependencyEdgeRepository.setTrashed(restoredNodeIds, false);
+    // fixme: add to history
 
-    List<TreeNode> restorableChildNodes =
-        treeNodeRepository.getTrashedNodes(node.getId(), user.getId());
-
-    treeNodeRepository.restore(node.getId());
-    for (TreeNode rNode : restorableChildNodes) {
-      treeNodeRepository.restore(rNode.getId());
-      // fixme: add to history
-    }
-
-    TreeNodeDto outputDto = new TreeNodeDto();
-
-    return outputDto;
+    return restoredNodeIds;
   }
 
   /**
@@ -526,14 +594,9 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
       throw new TrashStateException("Cannot create node under trashed parent node.");
     }
 
-    List<TreeNode> parentNodeAncestors = getAncestors(parentNode);
-
-    List<UserGroup> usersGroups = userGroupRepository.findByUserId(user.getId());
+    List<TreeNode> parentNodeAncestors = getAncestorsForAccessCheck(parentNode);
 
-    List<String> usersGroupIds =
-        usersGroups == null
-            ? Collections.emptyList()
-            : usersGroups.stream().map(UserGroup::getId).collect(Collectors.toList());
+    Set<String> usersGroupIds = getUserGroupIds(user);
 
     /* meta node get some special access control handling.
      * users with read only access to a simulationresult should be able
@@ -563,26 +626,15 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
       throw new DocumentExistsException(
           "A node with this ID already exists. The ID can be omitted for auto-generation.");
     }
+    assignEffectiveAccessControl(
+        Collections.singletonList(treeNode), Collections.singletonList(parentNode));
 
-    ArrayList<String> siblingNames = new ArrayList<String>();
-    List<TreeNode> siblingNodes = treeNodeRepository.getChildren(parentNode);
-    String originalName = treeNode.getName();
-    siblingNodes.forEach(
-        s -> {
-          siblingNames.add(s.getName());
-        });
-    if (siblingNames.contains(treeNode.getName())) {
-      // Automatically rename the node if the name is already taken
-      int index = 1;
-      do {
-        treeNode.setName(originalName + " " + Integer.toString(index++));
-      } while (siblingNames.contains(treeNode.getName()));
-    }
-    treeNodeRepository.insert(treeNode);
+    insertWithFreeName(treeNode);
+    dependencyEdgeRepository.insertEdges(DependencyOps.getDependencyEdges(treeNode));
 
     treeNode.setVersion(0L);
     parentNodeAncestors.add(parentNode);
-    List<Permission> usersPermissionsForThisNode =
+    Set<Permission> usersPermissionsForThisNode =
         accessControlUtil.getCurrentUsersPermissionsForThisNode(
             user, treeNode, parentNodeAncestors, usersGroupIds);
 
@@ -606,9 +658,7 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
       treeNodeDto.setAccessControl(AccessControlType.INHERIT);
     }
 
-    // always fetch full content. since we need to send the whole node back to the server after an
-    // update
-    // fixme: send partial updates to db
+    // the full content is needed for the version log, even if only the metadata is updated
     TreeNode currentNode = treeNodeRepository.getNode(treeNodeDto.getId(), false);
 
     if (currentNode == null) {
@@ -623,7 +673,7 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
     if (currentNode.getAncestors().size() < 1) {
       throw new IllegalArgumentException("can't update the root node");
     }
-    List<TreeNode> mainNodeAncestors = getAncestors(currentNode);
+    List<TreeNode> mainNodeAncestors = getAncestorsForAccessCheck(currentNode);
 
     TreeNode parent = mainNodeAncestors.get(mainNodeAncestors.size() - 1);
 
@@ -634,12 +684,7 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
       checkVersionNumber(currentNode, versionNumber);
     }
 
-    List<UserGroup> usersGroups = userGroupRepository.findByUserId(user.getId());
-
-    List<String> usersGroupIds =
-        usersGroups == null
-            ? Collections.emptyList()
-            : usersGroups.stream().map(UserGroup::getId).collect(Collectors.toList());
+    Set<String> usersGroupIds = getUserGroupIds(user);
 
     if (!accessControlUtil.doesUserHaveModifyPermission(
         user, currentNode, mainNodeAncestors, usersGroupIds)) {
@@ -661,26 +706,13 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
       }
     }
 
-    // are we changing the nodes name?
-    if (currentNode.getName().compareTo(treeNodeDto.getName()) != 0) {
-      // check if one of the siblings uses the name
-      ArrayList<String> siblingNames = new ArrayList<>();
-      List<TreeNode> siblingNodes = treeNodeRepository.getChildren(parent);
-      siblingNodes.forEach(
-          s -> {
-            siblingNames.add(s.getName());
-          });
-      if (siblingNames.contains(treeNodeDto.getName())) {
-        throw new DocumentExistsException(
-            "A node with this name already exists. Please choose a different name.");
-      }
-      // change the name in all releases
-      treeNodeLogRepository.renameReleases(currentNode.getId(), treeNodeDto.getName());
-    }
+    // are we changing the nodes name? the unique index on the names of siblings checks it's free
+    boolean renamed = currentNode.getName().compareTo(treeNodeDto.getName()) != 0;
 
     if (!sparse) {
       currentNode.setContent(treeNodeDto.getContent());
-      List<String> deepDependencies = getDeepNodeDependencies(currentNode, this::getDepNode);
+      List<String> deepDependencies =
+          getDeepNodeDependencies(currentNode, createDependencyResolver());
       if (deepDependencies.contains(currentNode.getId())) {
         throw new IllegalArgumentException("there is a cyclic dependency in this node");
       }
@@ -689,9 +721,7 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
         List<String> removedPortIds =
             GraphModelContentOps.getRemovedPortIds(currentNode, treeNodeDto);
         if (!removedPortIds.isEmpty()) {
-          // fixme make this smarter
-          List<TreeNode> dependentGraphModels =
-              treeNodeRepository.findDependentNodes(currentNode.getId());
+          List<TreeNode> dependentGraphModels = getDependentNodes(currentNode.getId());
           GraphModelContentOps.throwExceptionIfPortRefAppearsInConnections(
               dependentGraphModels, removedPortIds);
         }
@@ -704,20 +734,67 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
       currentNode.setAccessControl(currentNode.getAccessControl());
     }
 
-    // save a copy of the old node
-    treeNodeLogRepository.insertVersion(NodeLogOps.create(currentNode, user, ""));
+    // a copy of the old node, saved once the update went through
+    TreeNodeLog previousVersion = NodeLogOps.create(currentNode, user, "");
 
     dtoToModelConverter.updateTreeNodeFromDto(currentNode, treeNodeDto, sparse);
-    treeNodeRepository.save(currentNode);
+    AggregatedAccessControlInformation previousEffectiveAccessControl =
+        currentNode.getEffectiveAccessControl();
+    assignEffectiveAccessControl(
+        Collections.singletonList(currentNode), Collections.singletonList(parent));
+    TreeNode savedTreeNode;
+    try {
+      savedTreeNode = treeNodeRepository.updateNode(currentNode, !sparse);
+    } catch (DuplicateKeyException e) {
+      throw new DocumentExistsException(NAME_EXISTS_MESSAGE);
+    }
+    if (savedTreeNode == null) {
+      throw new VersionConflictException(
+          "version mismatch, node " + currentNode.getId() + " has been changed in the meantime");
+    }
+    versionLogWriter.write(previousVersion);
+    if (renamed) {
+      // change the name in all releases
+      treeNodeLogRepository.renameReleases(currentNode.getId(), currentNode.getName());
+    }
+    if (!sparse) {
+      updateDependencyEdges(currentNode);
+    }
+    propagateEffectiveAccessControl(currentNode, previousEffectiveAccessControl);
 
-    TreeNode savedTreeNode = treeNodeRepository.getNode(currentNode.getId(), true);
-    List<Permission> usersPermissionsForThisNode =
+    Set<Permission> usersPermissionsForThisNode =
         accessControlUtil.getCurrentUsersPermissionsForThisNode(
             user, savedTreeNode, mainNodeAncestors, usersGroupIds);
     return convertToAndEnrichTreeNodeDto(
         savedTreeNode, usersPermissionsForThisNode, mainNodeAncestors);
   }
 
+  /**
+   * Insert a new node, automatically renaming it if a sibling already has its name. The unique
+   * index on the names of siblings catches names taken in the meantime.
+   */
+  private void insertWithFreeName(TreeNode treeNode) {
+    String originalName = treeNode.getName();
+    Set<String> siblingNames =
+        new HashSet<>(treeNodeRepository.getChildNames(treeNode.getParentId(), originalName));
+    int index = 1;
+    while (true) {
+      if (!siblingNames.contains(treeNode.getName())) {
+        try {
+          treeNodeRepository.insert(treeNode);
+          return;
+        } catch (DuplicateKeyException e) {
+          if (treeNodeRepository.existsById(treeNode.getId())) {
+            throw new DocumentExistsException(
+                "A node with this ID already exists. The ID can be omitted for auto-generation.");
+          }
+          siblingNames.add(treeNode.getName());
+        }
+      }
+      treeNode.setName(originalName + " " + Integer.toString(index++));
+    }
+  }
+
   @Override
   public List<TreeNodeVersionDto> getHistoryForNode(
       String nodeId,
@@ -727,6 +804,7 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
     BaseNodeInfo bni = getNodeForUser(nodeId, user, true);
     assertPermission(bni, Permission.READ);
 
+    versionLogWriter.flush(nodeId);
     List<TreeNodeLog> versions = treeNodeLogRepository.findVersions(nodeId, true);
 
     // the latest version is our main node
@@ -756,7 +834,8 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
     List<TreeNodeVersionDto> versionsDto = new ArrayList<>();
     for (TreeNodeLog v : usedVersions) {
       TreeNodeVersionDto vDto = modelToDtoConverter.createTreeNodeVersion(v);
-      vDto.setCurrentUserAccessPermissions(bni.getPermissions());
+      vDto.setCurrentUserAccessPermissions(
+          modelToDtoConverter.toPermissionList(bni.getPermissions()));
       versionsDto.add(vDto);
     }
 
@@ -778,6 +857,7 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
     BaseNodeInfo bni = getNodeForUser(nodeId, user, true);
     assertPermission(bni, Permission.MODIFY);
 
+    versionLogWriter.flush(nodeId);
     TreeNodeLog version = treeNodeLogRepository.findVersion(nodeId, versionNumber, true);
     if (version == null) {
       throw new NotFoundException(TREE_NODE_NOT_FOUND_MESSAGE);
@@ -796,14 +876,9 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
       if (node.getTrashed() != null && node.getTrashed()) {
         throw new TrashStateException("You cannot restore a version of a trashed node.");
       }
-      List<TreeNode> mainNodeAncestors = getAncestors(node);
+      List<TreeNode> mainNodeAncestors = getAncestorsForAccessCheck(node);
 
-      List<UserGroup> usersGroups = userGroupRepository.findByUserId(user.getId());
-
-      List<String> usersGroupIds =
-          usersGroups == null
-              ? Collections.emptyList()
-              : usersGroups.stream().map(UserGroup::getId).collect(Collectors.toList());
+      Set<String> usersGroupIds = getUserGroupIds(user);
 
       if (!accessControlUtil.doesUserHaveModifyPermission(
           user, node, mainNodeAncestors, usersGroupIds)) {
@@ -842,64 +917,116 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
       throw new BadRequestException("can't patch node without content");
     }
 
-    Map<String, Object> originalContentCopy = PatchOps.cloneContent(node.getContent());
+    // the size of the content as stored, to tell whether the patched content can stay in place
+    int storedContentSize = ContentStore.getBsonSize(node.getContent());
+    // the content is patched in place, only its port ids are needed for the removed port check
+    List<String> originalInportIds =
+        GraphModelContentOps.getModelNodePortIds(node.getContent(), "inports");
+    List<String> originalOutportIds =
+        GraphModelContentOps.getModelNodePortIds(node.getContent(), "outports");
 
     checkVersionNumber(node, versionNumber);
 
-    List<TreeNode> mainNodeAncestors = getAncestors(node);
-
-    List<UserGroup> usersGroups = userGroupRepository.findByUserId(user.getId());
+    List<TreeNode> mainNodeAncestors = getAncestorsForAccessCheck(node);
 
-    List<String> usersGroupIds =
-        usersGroups == null
-            ? Collections.emptyList()
-            : usersGroups.stream().map(UserGroup::getId).collect(Collectors.toList());
+    Set<String> usersGroupIds = getUserGroupIds(user);
 
     if (!accessControlUtil.doesUserHaveModifyPermission(
         user, node, mainNodeAncestors, usersGroupIds)) {
       throw new ForbiddenException("User does not have the privileges required to edit this node.");
     }
-    AggregatedAccessControlInformation aaci =
-        accessControlUtil.getAggregatedAccessControl(node, mainNodeAncestors);
 
     // FIXME: if patching fails we will end up with a unneeded version
     // in the history
-    treeNodeLogRepository.insertVersion(
-        NodeLogOps.create(node, user, description != null ? description : ""));
+    TreeNodeLog previousVersion =
+        NodeLogOps.create(node, user, description != null ? description : "");
+    // the version is written later on, but the content is patched in place right away
+    previousVersion.setContent(PatchOps.copyContent(node.getContent()));
+    versionLogWriter.write(previousVersion);
 
-    /*
-     * FIXME: it would be way better to build a mongodb update command
-     *  from the treeNodeContentPatch. we wouldn't have to fetch
-     *  the whole content upfront. this is left for later optimization.
-     */
+    // the patch is applied in memory as well, the dependency and port checks need the result
     PatchOps.patchNode(node, treeNodeContentPatch);
 
     List<String> removedPortIds =
-        GraphModelContentOps.getRemovedPortIdsFromContent(originalContentCopy, node.getContent());
+        GraphModelContentOps.getRemovedPortIds(
+            originalInportIds, originalOutportIds, node.getContent());
     if (!removedPortIds.isEmpty()) {
-      List<TreeNode> dependentGraphModels = treeNodeRepository.findDependentNodes(node.getId());
+      List<TreeNode> dependentGraphModels = getDependentNodes(node.getId());
       GraphModelContentOps.throwExceptionIfPortRefAppearsInConnections(
           dependentGraphModels, removedPortIds);
     }
-    List<String> deepDependencies = getDeepNodeDependencies(node, this::getDepNode);
+    List<String> deepDependencies = getDeepNodeDependencies(node, createDependencyResolver());
     if (deepDependencies.contains(node.getId())) {
       throw new IllegalArgumentException("there is a cyclic dependency in this node");
     }
     node.setProcessDependencies(deepDependencies);
 
-    treeNodeRepository.save(node);
+    // only write the changed paths if possible, and if the content stays small enough to be
+    // stored as it is, otherwise saving it compresses it or moves it into a blob or a file
+    int patchedContentSize = storedContentSize + getPatchSize(treeNodeContentPatch);
+    Update contentUpdate =
+        contentStore.isStoredInline(node.getType().name(), patchedContentSize)
+            ? PatchOps.toUpdate(treeNodeContentPatch, node.getContent())
+            : null;
+    if (contentUpdate == null || !applyContentUpdate(node, contentUpdate)) {
+      treeNodeRepository.save(node);
+    }
+    updateDependencyEdges(node);
+  }
+
+  /**
+   * Estimates by how much a patch grows the content at most, by the size of the BSON of all of its
+   * parts.
+   */
+  private int getPatchSize(TreeNodeContentPatch treeNodeContentPatch) {
+    Map<String, Object> parts = new HashMap<>();
+    if (treeNodeContentPatch.getAdded() != null) {
+      parts.put("added", treeNodeContentPatch.getAdded());
+    }
+    if (treeNodeContentPatch.getDeleted() != null) {
+      parts.put("deleted", treeNodeContentPatch.getDeleted());
+    }
+    if (treeNodeContentPatch.getUpdated() != null) {
+      parts.put("updated", treeNodeContentPatch.getUpdated());
+    }
+    return ContentStore.getBsonSize(parts);
+  }
+
+  /**
+   * Write a patch as an update, guarded by the version of the node the patch was applied to.
+   *
+   * @param node The patched node.
+   * @param contentUpdate The patch translated into an update of the content.
+   * @return false if the patch can't be written as an update, because the database rejected it or
+   *     the content is stored in a blob, in a file or compressed. The patched node has to be saved
+   *     as a whole then, which also detects a version conflict.
+   */
+  private boolean applyContentUpdate(TreeNode node, Update contentUpdate) {
+    contentUpdate
+        .set("processDependencies", node.getProcessDependencies())
+        .inc("version", 1)
+        .currentDate("lastModifiedDate");
+    UpdateResult updateResult;
+    try {
+      updateResult =
+          treeNodeRepository.updateInlineContent(node.getId(), node.getVersion(), contentUpdate);
+    } catch (NonTransientDataAccessException e) {
+      LOGGER.debug("could not apply the patch of node " + node.getId() + " as an update", e);
+      return false;
+    }
+    return updateResult.getMatchedCount() == 1;
   }
 
   @Override
-  public void moveNode(String nodeId, Long versionNumber, String newParentId, AppUser user) {
+  public long moveNode(String nodeId, Long versionNumber, String newParentId, AppUser user) {
     if (StringUtils.isBlank(nodeId)) {
       throw new BadRequestException("Blank versionId in request.");
     }
     TreeNode node = treeNodeRepository.getNode(nodeId, true);
-    List<TreeNode> mainNodeAncestors = getAncestors(node);
     if (node == null) {
       throw new NotFoundException("Tree node not found.");
     }
+    List<TreeNode> mainNodeAncestors = getAncestorsForAccessCheck(node);
     if (node.getTrashed() != null && node.getTrashed()) {
       throw new TrashStateException("You cannot patch a trashed node.");
     }
@@ -912,12 +1039,7 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
       throw new BadRequestException("cannot move root node.");
     }
 
-    List<UserGroup> usersGroups = userGroupRepository.findByUserId(user.getId());
-
-    List<String> usersGroupIds =
-        usersGroups == null
-            ? Collections.emptyList()
-            : usersGroups.stream().map(UserGroup::getId).collect(Collectors.toList());
+    Set<String> usersGroupIds = getUserGroupIds(user);
 
     if (!accessControlUtil.doesUserHaveDeletePermission(
         user, node, mainNodeAncestors, usersGroupIds)) {
@@ -926,7 +1048,7 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
     checkVersionNumber(node, versionNumber);
 
     TreeNode newParentNode = treeNodeRepository.getNode(newParentId, true);
-    List<TreeNode> newParentNodeAncestors = getAncestors(newParentNode);
+    List<TreeNode> newParentNodeAncestors = getAncestorsForAccessCheck(newParentNode);
 
     if (!accessControlUtil.doesUserHaveCreatePermission(
         user, newParentNode, newParentNodeAncestors, usersGroupIds)) {
@@ -934,40 +1056,35 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
           "User does not have the privileges required to move this node to new parent.");
     }
 
-    ArrayList<String> siblingNames = new ArrayList<String>();
-    List<TreeNode> siblingNodes = treeNodeRepository.getChildren(newParentNode);
-    siblingNodes.forEach(
-        s -> {
-          siblingNames.add(s.getName());
-        });
-    if (siblingNames.contains(node.getName())) {
-      throw new DocumentExistsException(
-          "A node with this name already exists. Please choose a different name.");
-    }
-
     List<String> newAncestors = new ArrayList<>(newParentNode.getAncestors());
     newAncestors.add(newParentNode.getId());
 
-    UpdateResult mainNodeUpdateResult =
-        treeNodeRepository.update(
-            nodeId, versionNumber, new Update().set("ancestors", newAncestors));
-    if (mainNodeUpdateResult.getModifiedCount() != 1) {
+    // the node might inherit its access control from somewhere else now
+    AggregatedAccessControlInformation previousEffectiveAccessControl =
+        node.getEffectiveAccessControl();
+    List<String> oldAncestors = node.getAncestors();
+    node.setAncestors(newAncestors);
+    assignEffectiveAccessControl(
+        Collections.singletonList(node), Collections.singletonList(newParentNode));
+
+    long movedNodes;
+    try {
+      movedNodes =
+          treeNodeRepository.moveSubtree(
+              nodeId,
+              versionNumber,
+              oldAncestors.size(),
+              newAncestors,
+              node.getEffectiveAccessControl());
+    } catch (DuplicateKeyException e) {
+      // the node itself is updated first, so nothing has been moved
+      throw new DocumentExistsException(NAME_EXISTS_MESSAGE);
+    }
+    if (movedNodes == 0) {
       throw new BadRequestException("failed to move node.");
     }
-
-    List<TreeNode> childNodes =
-        treeNodeRepository.getChildren(nodeId, node.getAncestors().size(), true, true);
-    for (TreeNode childNode : childNodes) {
-      List<String> childAncestors = generateNewAncestors(childNode, nodeId, newAncestors);
-      UpdateResult childNodeUpdateResult =
-          treeNodeRepository.update(
-              childNode.getId(),
-              childNode.getVersion(),
-              new Update().set("ancestors", childAncestors));
-      if (childNodeUpdateResult.getModifiedCount() != 1) {
-        throw new BadRequestException("failed to move node.");
-      }
-    }
+    propagateEffectiveAccessControl(node, previousEffectiveAccessControl);
+    return movedNodes;
   }
 
   @Override
@@ -984,17 +1101,6 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
 
     String copiedNodeName = sourceNode.getTreeNode().getName() + " - copy";
 
-    ArrayList<String> siblingNames = new ArrayList<String>();
-    List<TreeNode> siblingNodes = treeNodeRepository.getChildren(targetNode.getTreeNode());
-    siblingNodes.forEach(
-        s -> {
-          siblingNames.add(s.getName());
-        });
-    if (siblingNames.contains(copiedNodeName)) {
-      throw new DocumentExistsException(
-          "A node with this name already exists. Please choose a different name.");
-    }
-
     TreeNode copiedTreeNode = sourceNode.getTreeNode();
     List<String> newAncestors =
         sourceNode
@@ -1006,7 +1112,14 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
     copiedTreeNode.setId(this.generateGuid());
     copiedTreeNode.setVersion(0L);
     copiedTreeNode.setName(copiedNodeName);
-    this.treeNodeRepository.insert(copiedTreeNode);
+    assignEffectiveAccessControl(
+        Collections.singletonList(copiedTreeNode),
+        Collections.singletonList(targetNode.getTreeNode()));
+    try {
+      this.treeNodeRepository.insert(copiedTreeNode);
+    } catch (DuplicateKeyException e) {
+      throw new DocumentExistsException(NAME_EXISTS_MESSAGE);
+    }
 
     List<TreeNodeLog> releases = this.treeNodeLogRepository.findReleases(nodeId, false);
     releases.forEach(
@@ -1019,6 +1132,10 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
         });
     this.treeNodeLogRepository.insert(releases);
 
+    List<DependencyEdge> copiedEdges = DependencyOps.getDependencyEdges(copiedTreeNode);
+    releases.forEach(r -> copiedEdges.addAll(DependencyOps.getDependencyEdges(r)));
+    dependencyEdgeRepository.insertEdges(copiedEdges);
+
     TreeNodeDto nodeDto =
         modelToDtoConverter.createTreeNodeDto(copiedTreeNode, targetNode.getPermissions());
     nodeDto.setParentId(newParentId);
@@ -1073,10 +1190,24 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
     targetFolder.setAncestors(Collections.singletonList("root"));
     targetFolder.setName(sourceFolder.getTreeNode().getName() + " - copy");
 
-    treeNodeRepository.insert(targetFolder);
+    List<TreeNode> copiedNodes = new ArrayList<>(targetNodes);
+    copiedNodes.add(targetFolder);
+    assignEffectiveAccessControl(
+        copiedNodes, Collections.singletonList(treeNodeRepository.getNode("root", true)));
+
+    try {
+      treeNodeRepository.insert(targetFolder);
+    } catch (DuplicateKeyException e) {
+      throw new DocumentExistsException(NAME_EXISTS_MESSAGE);
+    }
     treeNodeRepository.insert(targetNodes);
     treeNodeLogRepository.insert(targetReleases);
 
+    List<DependencyEdge> copiedEdges = new ArrayList<>();
+    targetNodes.forEach(n -> copiedEdges.addAll(DependencyOps.getDependencyEdges(n)));
+    targetReleases.forEach(r -> copiedEdges.addAll(DependencyOps.getDependencyEdges(r)));
+    dependencyEdgeRepository.insertEdges(copiedEdges);
+
     TreeNodeDto targetFolderDto =
         modelToDtoConverter.createTreeNodeDto(targetFolder, sourceFolder.getPermissions());
     targetFolderDto.setParentId("root");
@@ -1084,6 +1215,42 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
     return targetFolderDto;
   }
 
+  @Override
+  public void refreshEffectiveAccessControl(String nodeId) {
+    TreeNode node = treeNodeRepository.getNode(nodeId, true);
+    if (node == null) {
+      throw new NotFoundException(TREE_NODE_NOT_FOUND_MESSAGE);
+    }
+    Map<String, AggregatedAccessControlInformation> inherited = new HashMap<>();
+    List<TreeNode> ancestors = getAncestorsForAccessCheck(node);
+    if (!ancestors.isEmpty()) {
+      TreeNode parent = ancestors.get(ancestors.size() - 1);
+      inherited.put(parent.getId(), getEffectiveAccessControl(parent));
+    }
+    List<TreeNode> subtree =
+        new ArrayList<>(treeNodeRepository.getAccessControlledDescendants(nodeId));
+    subtree.add(node);
+    updateEffectiveAccessControl(subtree, inherited);
+  }
+
+  @Override
+  public void fillInEffectiveAccessControl(List<TreeNode> nodes) {
+    Set<String> nodeIds = nodes.stream().map(TreeNode::getId).collect(Collectors.toSet());
+    Map<String, AggregatedAccessControlInformation> inherited = new HashMap<>();
+    for (TreeNode ancestor : getAncestorsById(nodes).values()) {
+      // ancestors within the batch are worked out along with it
+      if (nodeIds.contains(ancestor.getId())) {
+        continue;
+      }
+      AggregatedAccessControlInformation effectiveAccessControl =
+          getEffectiveAccessControl(ancestor);
+      if (effectiveAccessControl != null) {
+        inherited.put(ancestor.getId(), effectiveAccessControl);
+      }
+    }
+    updateEffectiveAccessControl(nodes, inherited);
+  }
+
   private TreeNode makeTreeNodeUniqueAgain(TreeNode sourceTreeNode, String parentId) {
     List<String> newAncestors =
         sourceTreeNode.getAncestors().subList(0, sourceTreeNode.getAncestors().size() - 1);
@@ -1159,23 +1326,27 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
   }
 
   /**
-   * Replace the path to a given ancestor, to accomodate for moving nodes.
+   * Get the current versions of all nodes depending on a node, using the dependency edges.
    *
-   * @param treeNode The node to replace the path to a given ancestor in.
-   * @param ancestorId The ID of the ancestor to replace the path for.
-   * @param newParentAncestors The new ancestors of the parent.
+   * @param nodeId The id of the node to get the dependents of.
+   * @return The dependent nodes, including their content.
    */
-  private List<String> generateNewAncestors(
-      TreeNode treeNode, String ancestorId, List<String> newParentAncestors) {
-    List<String> currentAncestors = treeNode.getAncestors();
-    int indexOfAncestor = currentAncestors.indexOf(ancestorId);
-
-    List<String> ancestorsFromUpdatedAncestorInclusive =
-        currentAncestors.subList(indexOfAncestor, currentAncestors.size());
-    List<String> updatedAncestorsList = new ArrayList<>();
-    updatedAncestorsList.addAll(newParentAncestors);
-    updatedAncestorsList.addAll(ancestorsFromUpdatedAncestorInclusive);
-    return updatedAncestorsList;
+  private List<TreeNode> getDependentNodes(String nodeId) {
+    List<String> dependentIds =
+        dependencyEdgeRepository
+            .findByDependencyIdAndDependentReleaseNrIsNull(nodeId)
+            .stream()
+            .map(DependencyEdge::getDependentId)
+            .collect(Collectors.toList());
+    if (dependentIds.isEmpty()) {
+      return Collections.emptyList();
+    }
+    return treeNodeRepository.findByIdIn(dependentIds);
+  }
+
+  private void updateDependencyEdges(TreeNode node) {
+    dependencyEdgeRepository.replaceEdges(
+        node.getId(), null, DependencyOps.getDependencyEdges(node));
   }
 
   /**
@@ -1187,7 +1358,7 @@ public class TreeNodeServiceImpl extends TreeNodeBaseService implements TreeNode
    * @return TreeNodeDto representing the TreeNode to be returned.
    */
   private TreeNodeDto convertToAndEnrichTreeNodeDto(
-      TreeNode treeNode, List<Permission> userPermissionsForThisNode, List<TreeNode> ancestors) {
+      TreeNode treeNode, Set<Permission> userPermissionsForThisNode, List<TreeNode> ancestors) {
     TreeNodeDto treeNodeDto =
         modelToDtoConverter.createTreeNodeDto(treeNode, userPermissionsForThisNode, ancestors);
     return addExtraFieldsToTreeNodeDto(treeNodeDto);
@@ -1,9 +1,25 @@
 package com.att.eg.cptl.capacityplanning.backend.service;
 
 import com.att.eg.cptl.capacityplanning.backend.model.AppUser;
+import com.att.eg.cptl.capacityplanning.backend.model.Session;
 import java.util.Optional;
 
-@FunctionalInterface
 public interface UserAuthenticationService {
   Optional<AppUser> findUserByToken(String token);
+
+  Optional<Session> findSessionByToken(String token);
+
+  /** Looks up the user of an already loaded session, without reading the session again. */
+  Optional<AppUser> findUserBySession(Session session);
+
+  /**
+   * Returns the user that was resolved when the token of the current request got authenticated.
+   */
+  Optional<AppUser> getAuthenticatedUser();
+
+  /** Drops a token from the token cache, e.g. after the session got removed. */
+  void invalidateToken(String token);
+
+  /** Drops all cached tokens of a user, so that changes to the user become visible right away. */
+  void invalidateUser(String userId);
 }
@@ -1,12 +1,23 @@
 package com.att.eg.cptl.capacityplanning.backend.service;
 
+import com.att.eg.cptl.capacityplanning.backend.config.AuthenticatedUser;
 import com.att.eg.cptl.capacityplanning.backend.dao.SessionRepository;
 import com.att.eg.cptl.capacityplanning.backend.dao.UserMongoRepository;
 import com.att.eg.cptl.capacityplanning.backend.model.AppUser;
 import com.att.eg.cptl.capacityplanning.backend.model.Session;
+import com.att.eg.cptl.capacityplanning.backend.util.SessionUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
 import org.codehaus.plexus.util.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -16,17 +27,115 @@ public class UserAuthenticationServiceImpl implements UserAuthenticationService
 
   @Autowired private SessionRepository sessionRepository;
 
+  @Autowired private MeterRegistry meterRegistry;
+
+  @Value("${token.expirySeconds}")
+  private long expirySeconds;
+
+  @Value("${token.cache.maxSize:10000}")
+  private long cacheMaxSize;
+
+  /**
+   * Sessions might get removed by the forecast backend, so entries must not live for the whole
+   * session lifetime.
+   */
+  @Value("${token.cache.ttlSeconds:300}")
+  private long cacheTtlSeconds;
+
+  private Cache<String, TokenCacheEntry> tokenCache;
+
+  @PostConstruct
+  public void init() {
+    tokenCache =
+        CacheBuilder.newBuilder()
+            .maximumSize(cacheMaxSize)
+            .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+    GuavaCacheMetrics.monitor(meterRegistry, tokenCache, "tokenCache");
+  }
+
   @Override
   public Optional<AppUser> findUserByToken(String token) {
-    Session session = sessionRepository.findById(token).get();
+    TokenCacheEntry entry = resolveToken(token);
+    return entry == null ? Optional.empty() : Optional.ofNullable(entry.user);
+  }
+
+  @Override
+  public Optional<Session> findSessionByToken(String token) {
+    TokenCacheEntry entry = resolveToken(token);
+    return entry == null ? Optional.empty() : Optional.of(entry.session);
+  }
+
+  @Override
+  public Optional<AppUser> findUserBySession(Session session) {
+    TokenCacheEntry entry = tokenCache.getIfPresent(session.getId());
+    if (entry != null) {
+      return Optional.ofNullable(entry.user);
+    }
+    return Optional.ofNullable(loadUser(session));
+  }
+
+  @Override
+  public Optional<AppUser> getAuthenticatedUser() {
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    if (authentication == null || !(authentication.getPrincipal() instanceof AuthenticatedUser)) {
+      return Optional.empty();
+    }
+    return Optional.of(((AuthenticatedUser) authentication.getPrincipal()).getAppUser());
+  }
+
+  @Override
+  public void invalidateToken(String token) {
+    tokenCache.invalidate(token);
+  }
+
+  @Override
+  public void invalidateUser(String userId) {
+    tokenCache
+        .asMap()
+        .values()
+        .removeIf(entry -> entry.user != null && userId.equals(entry.user.getId()));
+  }
+
+  /**
+   * Returns the session and user for a token, either from the cache or from the database. Expired
+   * sessions are returned as they are, but never stay in the cache.
+   */
+  private TokenCacheEntry resolveToken(String token) {
+    TokenCacheEntry entry = tokenCache.getIfPresent(token);
+    if (entry != null) {
+      if (SessionUtils.isSessionExpired(entry.session, expirySeconds)) {
+        tokenCache.invalidate(token);
+      }
+      return entry;
+    }
+    Session session = sessionRepository.findById(token).orElse(null);
+    if (session == null) {
+      return null;
+    }
+    entry = new TokenCacheEntry(session, loadUser(session));
+    if (entry.user != null && !SessionUtils.isSessionExpired(session, expirySeconds)) {
+      tokenCache.put(token, entry);
+    }
+    return entry;
+  }
+
+  private AppUser loadUser(Session session) {
     String username = session.getUsername();
     if (StringUtils.isBlank(username)) {
-      return Optional.empty();
+      return null;
     }
-    AppUser user = userMongoRepository.findByUsername(username);
-    if (user != null) {
-      return Optional.of(user);
+    return userMongoRepository.findByUsername(username);
+  }
+
+  private static final class TokenCacheEntry {
+    private final Session session;
+    private final AppUser user;
+
+    private TokenCacheEntry(Session session, AppUser user) {
+      this.session = session;
+      this.user = user;
     }
-    return Optional.empty();
   }
 }
@@ -3,6 +3,7 @@ package com.att.eg.cptl.capacityplanning.backend.service;
 import com.att.eg.cptl.capacityplanning.backend.dto.UserGroupDto;
 import com.att.eg.cptl.capacityplanning.backend.model.UserGroup;
 import java.util.List;
+import java.util.Set;
 
 public interface UserGroupService {
 
@@ -22,5 +23,13 @@ public interface UserGroupService {
 
   List<UserGroup> getUserGroupsForUser(String userId);
 
+  /**
+   * Returns the ids of all groups the user is a member of.
+   *
+   * @param userId the id of the user
+   * @return an immutable set of user group ids, empty if the user isn't in any group
+   */
+  Set<String> getUserGroupIdsForUser(String userId);
+
   List<UserGroupDto> getUserGroupDtosForUser(String userId);
 }
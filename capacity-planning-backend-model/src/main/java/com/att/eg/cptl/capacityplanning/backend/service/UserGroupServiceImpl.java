@@ -10,11 +10,20 @@ import com.att.eg.cptl.capacityplanning.backend.model.UserGroup;
 import com.att.eg.cptl.capacityplanning.backend.model.auth.Role;
 import com.att.eg.cptl.capacityplanning.backend.model.converter.DtoToModelConverter;
 import com.att.eg.cptl.capacityplanning.backend.model.converter.ModelToDtoConverter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -28,6 +37,24 @@ public class UserGroupServiceImpl implements UserGroupService {
 
   @Resource private UserMongoRepository userRepository;
 
+  @Value("${usergroup.cache.maxSize:10000}")
+  private long membershipCacheMaxSize;
+
+  /** Bounds how long group changes made by other backend instances can go unnoticed. */
+  @Value("${usergroup.cache.ttlSeconds:60}")
+  private long membershipCacheTtlSeconds;
+
+  private Cache<String, Set<String>> membershipCache;
+
+  @PostConstruct
+  public void init() {
+    membershipCache =
+        CacheBuilder.newBuilder()
+            .maximumSize(membershipCacheMaxSize)
+            .expireAfterWrite(membershipCacheTtlSeconds, TimeUnit.SECONDS)
+            .build();
+  }
+
   @Override
   public List<UserGroupDto> getAllUserGroups() {
     List<UserGroup> userGroups = repository.findAll();
@@ -49,6 +76,7 @@ public class UserGroupServiceImpl implements UserGroupService {
     UserGroup userGroup = dtoToModelConverter.convertDtoToUserGroup(userGroupDto);
     if (userGroupDto.getId() == null || !repository.existsById(userGroupDto.getId())) {
       UserGroup newGroup = repository.save(userGroup);
+      membershipCache.invalidateAll();
       List<AppUser> usersInGroup = userRepository.findByIdIn(newGroup.getUsers());
       return modelToDtoConverter.createUserGroupDto(newGroup, usersInGroup);
     } else {
@@ -69,6 +97,7 @@ public class UserGroupServiceImpl implements UserGroupService {
     }
     UserGroup userGroup = dtoToModelConverter.convertDtoToUserGroup(userGroupDto);
     repository.save(userGroup);
+    membershipCache.invalidateAll();
     return userGroupDto;
   }
 
@@ -84,12 +113,14 @@ public class UserGroupServiceImpl implements UserGroupService {
       throw new BadRequestException("usersWithAccess must be set (even if it is empty).");
     }
     repository.save(userGroup);
+    membershipCache.invalidateAll();
     return userGroup;
   }
 
   @Override
   public void deleteUserGroup(String userGroupId) {
     repository.deleteById(userGroupId);
+    membershipCache.invalidateAll();
   }
 
   @Override
@@ -114,6 +145,24 @@ public class UserGroupServiceImpl implements UserGroupService {
     return repository.findByUserId(userId);
   }
 
+  @Override
+  public Set<String> getUserGroupIdsForUser(String userId) {
+    try {
+      return membershipCache.get(userId, () -> loadUserGroupIds(userId));
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("failed to load user groups of user " + userId, e);
+    }
+  }
+
+  private Set<String> loadUserGroupIds(String userId) {
+    List<UserGroup> userGroups = repository.findByUserId(userId);
+    if (userGroups == null) {
+      return ImmutableSet.of();
+    }
+    return ImmutableSet.copyOf(
+        userGroups.stream().map(UserGroup::getId).collect(Collectors.toList()));
+  }
+
   @Override
   public List<UserGroupDto> getUserGroupDtosForUser(String userId) {
     List<UserGroup> usersGroups = repository.findByUserId(userId);
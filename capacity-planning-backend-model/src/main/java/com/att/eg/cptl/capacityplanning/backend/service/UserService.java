@@ -26,6 +26,8 @@ public interface UserService {
 
   LoginOutputDto loginUser(LoginInputDto loginInput);
 
+  void logoutUser(String token);
+
   Map<String, Object> getSettingsForUser(String userId);
 
   void addSettingToUser(String userId, SettingDto settingDto);
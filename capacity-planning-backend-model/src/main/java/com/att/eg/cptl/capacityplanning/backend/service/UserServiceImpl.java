@@ -43,6 +43,8 @@ public class UserServiceImpl implements UserService {
 
   @Autowired private UserGroupService userGroupService;
 
+  @Autowired private UserAuthenticationService userAuthenticationService;
+
   @Resource private DtoToModelConverter dtoToModelConverter;
 
   @Value("${ldap.enabled:false}")
@@ -107,6 +109,7 @@ public class UserServiceImpl implements UserService {
       user.setPassword(dbUser.getPassword());
     }
     userMongoRepository.save(user);
+    userAuthenticationService.invalidateUser(userId);
     return user;
   }
 
@@ -122,6 +125,7 @@ public class UserServiceImpl implements UserService {
 
     removeUserFromUserGroups(userId);
     userMongoRepository.deleteById(userId);
+    userAuthenticationService.invalidateUser(userId);
   }
 
   @Override
@@ -175,6 +179,8 @@ public class UserServiceImpl implements UserService {
           appUser.setRole(Role.ADMIN);
         }
         userMongoRepository.save(appUser);
+        // the LDAP groups might have changed the role of the user
+        userAuthenticationService.invalidateUser(appUser.getId());
         // create the session
         Session userSession = createSession(appUser.getUsername());
 
@@ -208,6 +214,12 @@ public class UserServiceImpl implements UserService {
     }
   }
 
+  @Override
+  public void logoutUser(String token) {
+    sessionRepository.deleteById(token);
+    userAuthenticationService.invalidateToken(token);
+  }
+
   @Override
   public AppUser getUserByName(String username) {
     return userMongoRepository.findByUsername(username);
@@ -245,6 +257,7 @@ public class UserServiceImpl implements UserService {
     settings.put(settingDto.getKey(), settingDto.getValue());
     user.setSettings(settings);
     userMongoRepository.save(user);
+    userAuthenticationService.invalidateUser(userId);
   }
 
   private void removeUserFromUserGroups(String userId) {
@@ -0,0 +1,88 @@
+package com.att.eg.cptl.capacityplanning.backend.service.util.treenode;
+
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.ContentDelta;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import org.springframework.lang.Nullable;
+
+public class ContentDeltaOps {
+  /**
+   * Work out how to get from one version of the content to another.
+   *
+   * @param base The content to start from.
+   * @param target The content to end up with.
+   * @return The delta, which is empty if the contents are equal.
+   */
+  public static ContentDelta diff(Map<String, Object> base, Map<String, Object> target) {
+    ContentDelta delta = new ContentDelta();
+    for (String key : base.keySet()) {
+      if (!target.containsKey(key)) {
+        if (delta.getUnset() == null) {
+          delta.setUnset(new ArrayList<>());
+        }
+        delta.getUnset().add(key);
+      }
+    }
+    for (Map.Entry<String, Object> entry : target.entrySet()) {
+      Object baseValue = base.get(entry.getKey());
+      if (baseValue instanceof Map && entry.getValue() instanceof Map) {
+        ContentDelta nestedDelta =
+            diff((Map<String, Object>) baseValue, (Map<String, Object>) entry.getValue());
+        if (!isEmpty(nestedDelta)) {
+          if (delta.getNested() == null) {
+            delta.setNested(new LinkedHashMap<>());
+          }
+          delta.getNested().put(entry.getKey(), nestedDelta);
+        }
+      } else if (!base.containsKey(entry.getKey())
+          || !Objects.equals(baseValue, entry.getValue())) {
+        if (delta.getSet() == null) {
+          delta.setSet(new LinkedHashMap<>());
+        }
+        delta.getSet().put(entry.getKey(), entry.getValue());
+      }
+    }
+    return delta;
+  }
+
+  /**
+   * Apply a delta to content. The content isn't changed, the result shares the objects the delta
+   * doesn't touch with it.
+   *
+   * @param base The content the delta was worked out against.
+   * @param delta The delta.
+   * @return The content after applying the delta.
+   */
+  public static Map<String, Object> apply(Map<String, Object> base, ContentDelta delta) {
+    Map<String, Object> content = new LinkedHashMap<>(base);
+    if (delta.getUnset() != null) {
+      delta.getUnset().forEach(content::remove);
+    }
+    if (delta.getSet() != null) {
+      content.putAll(delta.getSet());
+    }
+    if (delta.getNested() != null) {
+      delta
+          .getNested()
+          .forEach(
+              (key, nestedDelta) -> {
+                Object baseValue = content.get(key);
+                content.put(
+                    key,
+                    apply(
+                        baseValue instanceof Map
+                            ? (Map<String, Object>) baseValue
+                            : new LinkedHashMap<>(),
+                        nestedDelta));
+              });
+    }
+    return content;
+  }
+
+  public static boolean isEmpty(@Nullable ContentDelta delta) {
+    return delta == null
+        || (delta.getSet() == null && delta.getUnset() == null && delta.getNested() == null);
+  }
+}
@@ -4,9 +4,10 @@ import static com.att.eg.cptl.capacityplanning.backend.service.util.treenode.Gra
 
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.*;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class DependencyOps {
@@ -52,17 +53,20 @@ public class DependencyOps {
   }
 
   public static List<String> getDeepNodeDependencies(
-      TreeNodeBase treeNode, Function<TreeNodeDependency, TreeNodeBase> getSparseDepNode) {
+      TreeNodeBase treeNode, DependencyResolver dependencyResolver) {
     switch (treeNode.getType()) {
       case MODEL:
         List<String> deepDependencies = new ArrayList<>();
         List<TreeNodeDependency> deps = extractGraphProcModelDeps(treeNode.getContent());
+        Map<TreeNodeDependency, TreeNodeBase> depNodes = dependencyResolver.resolve(deps);
         for (TreeNodeDependency d : deps) {
-          TreeNodeBase dNode = getSparseDepNode.apply(d);
+          TreeNodeBase dNode = depNodes.get(d);
           if (dNode == null) {
             throw new IllegalArgumentException("invalid process dependency");
           }
-          deepDependencies.addAll(dNode.getProcessDependencies());
+          if (dNode.getProcessDependencies() != null) {
+            deepDependencies.addAll(dNode.getProcessDependencies());
+          }
           deepDependencies.add(d.getRef());
         }
         return deepDependencies.stream().distinct().collect(Collectors.toList());
@@ -73,6 +77,46 @@ public class DependencyOps {
     }
   }
 
+  /**
+   * Create the dependency graph edges of a node or a release, one for each of its process
+   * dependencies.
+   *
+   * @param node The dependent node or release.
+   * @return The edges from the node to each of its dependencies.
+   */
+  public static List<DependencyEdge> getDependencyEdges(TreeNodeBase node) {
+    List<DependencyEdge> edges = new ArrayList<>();
+    if (node.getProcessDependencies() == null) {
+      return edges;
+    }
+    boolean isRelease = node instanceof TreeNodeLog;
+    Map<String, TreeNodeDependency> directDependencies = new HashMap<>();
+    if (node.getType() == NodeType.MODEL) {
+      for (TreeNodeDependency d : extractGraphProcModelDeps(node.getContent())) {
+        directDependencies.putIfAbsent(d.getRef(), d);
+      }
+    }
+    for (String dependencyId : new LinkedHashSet<>(node.getProcessDependencies())) {
+      DependencyEdge edge = new DependencyEdge();
+      edge.setDependentId(isRelease ? ((TreeNodeLog) node).getBaseNodeId() : node.getId());
+      edge.setDependentType(node.getType());
+      edge.setDependentReleaseNr(isRelease ? ((TreeNodeLog) node).getReleaseNr() : null);
+      edge.setDependencyId(dependencyId);
+      edge.setTrashed(isRelease ? null : node.getTrashed());
+      TreeNodeDependency directDependency = directDependencies.get(dependencyId);
+      if (directDependency != null) {
+        edge.setDirect(true);
+        edge.setTrackingMode(directDependency.getTrackingMode());
+        edge.setReleaseNr(directDependency.getReleaseNr());
+      } else {
+        // the dependencies of simulations are all direct ones
+        edge.setDirect(node.getType() != NodeType.MODEL);
+      }
+      edges.add(edge);
+    }
+    return edges;
+  }
+
   public static List<String> getSimulationDependencies(Map<String, Object> simulationNodeContent) {
     List<String> dependencies = new ArrayList<>();
     // start with the referenced model
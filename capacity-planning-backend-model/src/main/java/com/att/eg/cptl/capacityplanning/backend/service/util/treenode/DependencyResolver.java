@@ -0,0 +1,129 @@
+package com.att.eg.cptl.capacityplanning.backend.service.util.treenode;
+
+import com.att.eg.cptl.capacityplanning.backend.dao.TreeNodeLogRepository;
+import com.att.eg.cptl.capacityplanning.backend.dao.TreeNodeRepository;
+import com.att.eg.cptl.capacityplanning.backend.dao.TreeNodeRepositoryCustom.ProjectionType;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TrackingMode;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNode;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNodeBase;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNodeDependency;
+import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNodeLog;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves process dependencies to the nodes or releases they refer to. A batch of dependencies is
+ * resolved with at most one query per tracking mode, and the results only carry the type and the
+ * process dependencies. Resolved dependencies are remembered, so a resolver should only be used
+ * for a single request.
+ */
+public class DependencyResolver {
+  private final TreeNodeRepository treeNodeRepository;
+  private final TreeNodeLogRepository treeNodeLogRepository;
+  private final Set<TrackingMode> trackingModes;
+  private final Map<TreeNodeDependency, Optional<TreeNodeBase>> resolved = new HashMap<>();
+
+  /**
+   * @param trackingModes The tracking modes to resolve. Dependencies with any other tracking mode
+   *     can't be resolved.
+   */
+  public DependencyResolver(
+      TreeNodeRepository treeNodeRepository,
+      TreeNodeLogRepository treeNodeLogRepository,
+      Set<TrackingMode> trackingModes) {
+    this.treeNodeRepository = treeNodeRepository;
+    this.treeNodeLogRepository = treeNodeLogRepository;
+    this.trackingModes = trackingModes;
+  }
+
+  /**
+   * Resolve a batch of dependencies. FIXED dependencies resolve to their release,
+   * LATEST_RELEASE ones to the latest release or the current version of nodes without releases
+   * and CURRENT_VERSION ones to the current version.
+   *
+   * @param dependencies The dependencies to resolve.
+   * @return The nodes or releases by dependency. Dependencies which can't be resolved are missing.
+   */
+  public Map<TreeNodeDependency, TreeNodeBase> resolve(
+      Collection<TreeNodeDependency> dependencies) {
+    List<TreeNodeDependency> fixed = new ArrayList<>();
+    List<TreeNodeDependency> latestRelease = new ArrayList<>();
+    List<TreeNodeDependency> currentVersion = new ArrayList<>();
+    for (TreeNodeDependency dependency : dependencies) {
+      if (resolved.containsKey(dependency)) {
+        continue;
+      }
+      TrackingMode trackingMode = dependency.getTrackingMode();
+      if (trackingMode == null
+          || !trackingModes.contains(trackingMode)
+          || (trackingMode == TrackingMode.FIXED && dependency.getReleaseNr() == null)) {
+        resolved.put(dependency, Optional.empty());
+      } else if (trackingMode == TrackingMode.FIXED) {
+        fixed.add(dependency);
+      } else if (trackingMode == TrackingMode.LATEST_RELEASE) {
+        latestRelease.add(dependency);
+      } else {
+        currentVersion.add(dependency);
+      }
+    }
+
+    if (!fixed.isEmpty()) {
+      Map<String, Set<Long>> releaseNrsByBaseNodeId = new HashMap<>();
+      fixed.forEach(
+          d ->
+              releaseNrsByBaseNodeId
+                  .computeIfAbsent(d.getRef(), k -> new HashSet<>())
+                  .add(d.getReleaseNr()));
+      Map<String, TreeNodeLog> releases =
+          treeNodeLogRepository
+              .findReleaseDependencies(releaseNrsByBaseNodeId)
+              .stream()
+              .collect(
+                  Collectors.toMap(r -> r.getBaseNodeId() + "@" + r.getReleaseNr(), r -> r));
+      fixed.forEach(
+          d ->
+              resolved.put(
+                  d, Optional.ofNullable(releases.get(d.getRef() + "@" + d.getReleaseNr()))));
+    }
+
+    if (!latestRelease.isEmpty()) {
+      Map<String, TreeNodeLog> releases =
+          treeNodeLogRepository.findLatestReleaseDependencies(getRefs(latestRelease));
+      for (TreeNodeDependency d : latestRelease) {
+        if (releases.containsKey(d.getRef())) {
+          resolved.put(d, Optional.of(releases.get(d.getRef())));
+        } else {
+          // nodes without any release are tracked by their current version
+          currentVersion.add(d);
+        }
+      }
+    }
+
+    if (!currentVersion.isEmpty()) {
+      Map<String, TreeNode> nodes =
+          treeNodeRepository
+              .getNodes(ProjectionType.DEPENDENCIES, getRefs(currentVersion))
+              .stream()
+              .collect(Collectors.toMap(TreeNode::getId, Function.identity()));
+      currentVersion.forEach(d -> resolved.put(d, Optional.ofNullable(nodes.get(d.getRef()))));
+    }
+
+    Map<TreeNodeDependency, TreeNodeBase> resolvedDependencies = new HashMap<>();
+    for (TreeNodeDependency dependency : dependencies) {
+      resolved.get(dependency).ifPresent(node -> resolvedDependencies.put(dependency, node));
+    }
+    return resolvedDependencies;
+  }
+
+  private Set<String> getRefs(List<TreeNodeDependency> dependencies) {
+    return dependencies.stream().map(TreeNodeDependency::getRef).collect(Collectors.toSet());
+  }
+}
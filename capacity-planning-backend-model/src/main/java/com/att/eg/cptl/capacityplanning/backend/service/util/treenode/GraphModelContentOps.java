@@ -36,17 +36,34 @@ public class GraphModelContentOps {
 
   public static List<String> getRemovedPortIdsFromContent(
       Map<String, Object> oldNodeContent, Map<String, Object> updatedNodeContent) {
+    return getRemovedPortIds(
+        getModelNodePortIds(oldNodeContent, "inports"),
+        getModelNodePortIds(oldNodeContent, "outports"),
+        updatedNodeContent);
+  }
+
+  /**
+   * Find the ports that are missing in the updated content. Only the port ids of the old content
+   * are needed, so they can be taken before the content is changed in place.
+   *
+   * @param oldInportIds The ids of the inports before the update.
+   * @param oldOutportIds The ids of the outports before the update.
+   * @param updatedNodeContent The content after the update.
+   * @return The ids of the removed inports and outports.
+   */
+  public static List<String> getRemovedPortIds(
+      List<String> oldInportIds,
+      List<String> oldOutportIds,
+      Map<String, Object> updatedNodeContent) {
     List<String> portIds = new ArrayList<>();
-    List<String> oldIn = getModelNodePortIds(oldNodeContent, "inports");
-    List<String> updatedIn = getModelNodePortIds(updatedNodeContent, "inports");
-    for (String oldInportId : oldIn) {
+    Set<String> updatedIn = new HashSet<>(getModelNodePortIds(updatedNodeContent, "inports"));
+    for (String oldInportId : oldInportIds) {
       if (!updatedIn.contains(oldInportId)) {
         portIds.add(oldInportId);
       }
     }
-    List<String> oldOut = getModelNodePortIds(oldNodeContent, "outports");
-    List<String> updatedOut = getModelNodePortIds(updatedNodeContent, "outports");
-    for (String oldOutportId : oldOut) {
+    Set<String> updatedOut = new HashSet<>(getModelNodePortIds(updatedNodeContent, "outports"));
+    for (String oldOutportId : oldOutportIds) {
       if (!updatedOut.contains(oldOutportId)) {
         portIds.add(oldOutportId);
       }
@@ -2,13 +2,18 @@ package com.att.eg.cptl.capacityplanning.backend.service.util.treenode;
 
 import com.att.eg.cptl.capacityplanning.backend.model.TreeNodeContentPatch;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.TreeNode;
-import com.google.gson.Gson;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.lang.Nullable;
 
 public class PatchOps {
+  private static final String CONTENT = "content";
 
   public static void patchNode(TreeNode treeNode, TreeNodeContentPatch treeNodeContentPatch) {
     Map<String, Object> nodeContent = treeNode.getContent();
@@ -24,10 +29,150 @@ public class PatchOps {
     updateFieldsInContent(nodeContent, fieldsToUpdate);
   }
 
-  public static Map<String, Object> cloneContent(Map<String, Object> content) {
-    Gson gson = new Gson();
-    String jsonString = gson.toJson(content);
-    return gson.fromJson(jsonString, Map.class);
+  /**
+   * Translate a patch into update operators on the content of a node, so only the changed paths
+   * have to be written. The result is the same as that of {@link #patchNode}, which remains the
+   * fallback for what can't be expressed without knowing the content: removing list entries,
+   * adding to existing list entries and adding empty objects. Updates the database rejects, e.g.
+   * because their paths conflict or run through a scalar, have to fall back as well.
+   *
+   * @param treeNodeContentPatch The patch to translate.
+   * @param patchedContent The content after the patch was applied by {@link #patchNode}. Tells
+   *     whether added list entries are appended to an existing list.
+   * @return The update, or null if the patch can't be expressed as one.
+   */
+  @Nullable
+  public static Update toUpdate(
+      TreeNodeContentPatch treeNodeContentPatch, Map<String, Object> patchedContent) {
+    Update update = new Update();
+    boolean expressible =
+        addDeletesToUpdate(update, CONTENT, treeNodeContentPatch.getDeleted())
+            && addAddsToUpdate(update, CONTENT, treeNodeContentPatch.getAdded(), patchedContent)
+            && addUpdatesToUpdate(update, CONTENT, treeNodeContentPatch.getUpdated());
+    return expressible ? update : null;
+  }
+
+  private static boolean addDeletesToUpdate(
+      Update update, String path, @Nullable Map<String, Object> fieldsToDelete) {
+    if (fieldsToDelete == null) {
+      return true;
+    }
+    for (Map.Entry<String, Object> entry : fieldsToDelete.entrySet()) {
+      if (!isPlainKey(entry.getKey())) {
+        return false;
+      }
+      String fieldPath = path + "." + entry.getKey();
+      if (entry.getValue() instanceof Map) {
+        if (!addDeletesToUpdate(update, fieldPath, (Map<String, Object>) entry.getValue())) {
+          return false;
+        }
+      } else if (isListIndex(entry.getKey())) {
+        // removing a list entry shifts all the following ones
+        return false;
+      } else {
+        update.unset(fieldPath);
+      }
+    }
+    return true;
+  }
+
+  private static boolean addAddsToUpdate(
+      Update update,
+      String path,
+      @Nullable Map<String, Object> fieldsToAdd,
+      Map<String, Object> patchedContent) {
+    if (fieldsToAdd == null) {
+      return true;
+    }
+    for (Map.Entry<String, Object> entry : fieldsToAdd.entrySet()) {
+      if (!isPlainKey(entry.getKey())) {
+        return false;
+      }
+      String fieldPath = path + "." + entry.getKey();
+      if (!(entry.getValue() instanceof Map)) {
+        update.set(fieldPath, entry.getValue());
+        continue;
+      }
+      Map<String, Object> addedFields = (Map<String, Object>) entry.getValue();
+      Object patchedValue = patchedContent.get(entry.getKey());
+      if (addedFields.isEmpty()) {
+        // would replace whatever is stored there
+        return false;
+      }
+      if (addedFields.keySet().stream().anyMatch(PatchOps::isListIndex)) {
+        // list entries are appended to an existing list in the order of their indexes. objects
+        // might have to be merged into existing entries instead
+        if (!(patchedValue instanceof List)
+            || !addedFields.keySet().stream().allMatch(PatchOps::isListIndex)
+            || addedFields.values().stream().anyMatch(v -> v instanceof Map)) {
+          return false;
+        }
+        Object[] appendedEntries =
+            addedFields
+                .entrySet()
+                .stream()
+                .sorted(Comparator.comparingInt(e -> Integer.parseInt(e.getKey())))
+                .map(Map.Entry::getValue)
+                .toArray();
+        update.push(fieldPath).each(appendedEntries);
+      } else if (!(patchedValue instanceof Map)
+          || !addAddsToUpdate(
+              update, fieldPath, addedFields, (Map<String, Object>) patchedValue)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean addUpdatesToUpdate(
+      Update update, String path, @Nullable Map<String, Object> fieldsToUpdate) {
+    if (fieldsToUpdate == null) {
+      return true;
+    }
+    for (Map.Entry<String, Object> entry : fieldsToUpdate.entrySet()) {
+      if (!isPlainKey(entry.getKey())) {
+        return false;
+      }
+      // list entries are addressed by their index just like fields of objects
+      String fieldPath = path + "." + entry.getKey();
+      if (!(entry.getValue() instanceof Map)) {
+        update.set(fieldPath, entry.getValue());
+      } else if (((Map<String, Object>) entry.getValue()).isEmpty()
+          || !addUpdatesToUpdate(update, fieldPath, (Map<String, Object>) entry.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isPlainKey(String key) {
+    return StringUtils.isNotEmpty(key) && !key.contains(".") && !key.startsWith("$");
+  }
+
+  private static boolean isListIndex(String key) {
+    return key.length() < 10 && StringUtils.isNumeric(key);
+  }
+
+  /**
+   * Deep copy content, e.g. to keep it as a version before patching it in place. Objects and lists
+   * are copied, everything else is shared.
+   */
+  public static Map<String, Object> copyContent(Map<String, Object> content) {
+    Map<String, Object> copy = new LinkedHashMap<>();
+    content.forEach((key, value) -> copy.put(key, copyContentValue(value)));
+    return copy;
+  }
+
+  private static Object copyContentValue(Object value) {
+    if (value instanceof Map) {
+      return copyContent((Map<String, Object>) value);
+    }
+    if (value instanceof List) {
+      List<Object> copy = new ArrayList<>(((List<?>) value).size());
+      ((List<?>) value).forEach(entry -> copy.add(copyContentValue(entry)));
+      return copy;
+    }
+    return value;
   }
 
   private static void addFieldsToContent(
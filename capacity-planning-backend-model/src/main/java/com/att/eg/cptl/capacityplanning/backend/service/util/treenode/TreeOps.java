@@ -3,7 +3,8 @@ package com.att.eg.cptl.capacityplanning.backend.service.util.treenode;
 import com.att.eg.cptl.capacityplanning.backend.model.treenode.*;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 
 public class TreeOps {
@@ -16,7 +17,8 @@ public class TreeOps {
         fakeRoot.setAccessControl(AccessControlType.ADVANCED);
         AccessPermission ap = new AccessPermission();
         ap.setType(AccessIdType.ALL);
-        ap.setPermissions(Arrays.asList(Permission.READ, Permission.CREATE));
+        ap.setPermissions(EnumSet.of(Permission.READ, Permission.CREATE));
+        fakeRoot.setAcl(Collections.singletonList(ap));
         return fakeRoot;
     }
 }
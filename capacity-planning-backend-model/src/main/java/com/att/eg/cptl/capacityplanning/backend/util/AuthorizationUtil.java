@@ -13,7 +13,7 @@ public class AuthorizationUtil {
   @Autowired private UserAuthenticationService userAuthenticationService;
 
   public boolean hasPermissionToUpdateUser(String token, String userId) {
-    Optional<AppUser> sessionUserOptional = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> sessionUserOptional = findUser(token);
     if (!sessionUserOptional.isPresent()) {
       return false;
     }
@@ -30,10 +30,22 @@ public class AuthorizationUtil {
   }
 
   public AppUser getUserFromToken(String token) {
-    Optional<AppUser> sessionUserOptional = userAuthenticationService.findUserByToken(token);
+    Optional<AppUser> sessionUserOptional = findUser(token);
     return sessionUserOptional.orElse(null);
   }
 
+  /**
+   * The user of the current request has already been resolved during authentication. Only go to
+   * the database for tokens that didn't pass through the token filter.
+   */
+  private Optional<AppUser> findUser(String token) {
+    Optional<AppUser> authenticatedUser = userAuthenticationService.getAuthenticatedUser();
+    if (authenticatedUser.isPresent()) {
+      return authenticatedUser;
+    }
+    return userAuthenticationService.findUserByToken(token);
+  }
+
   private boolean isAdminUser(AppUser user) {
     return user.getRole() != null && user.getRole().equals(Role.ADMIN);
   }
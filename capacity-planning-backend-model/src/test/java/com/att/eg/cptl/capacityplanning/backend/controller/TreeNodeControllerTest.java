@@ -0,0 +1,84 @@
+package com.att.eg.cptl.capacityplanning.backend.controller;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.att.eg.cptl.capacityplanning.backend.dto.treenode.TreeNodeDto;
+import com.att.eg.cptl.capacityplanning.backend.model.AppUser;
+import com.att.eg.cptl.capacityplanning.backend.service.TreeNodeService;
+import com.att.eg.cptl.capacityplanning.backend.service.UserAuthenticationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+public class TreeNodeControllerTest {
+  private static final String NODE_ID = "node";
+  private static final String E_TAG = "\"tag\"";
+
+  private MockMvc mockMvc;
+  private byte[] content;
+
+  @Before
+  public void setup() throws Exception {
+    AppUser user = new AppUser();
+    UserAuthenticationService userAuthenticationService = mock(UserAuthenticationService.class);
+    when(userAuthenticationService.getAuthenticatedUser()).thenReturn(Optional.of(user));
+    TreeNodeDto node = new TreeNodeDto();
+    node.setContent(Collections.singletonMap("data", "0123456789"));
+    TreeNodeService treeNodeService = mock(TreeNodeService.class);
+    when(treeNodeService.getNodeContentETag(NODE_ID, user)).thenReturn(E_TAG);
+    when(treeNodeService.getNode(NODE_ID, false, false, false, true, user))
+        .thenReturn(Collections.singletonList(node));
+    ObjectMapper objectMapper = new ObjectMapper();
+    content = objectMapper.writeValueAsBytes(node.getContent());
+
+    TreeNodeController controller = new TreeNodeController();
+    DirectFieldAccessor fields = new DirectFieldAccessor(controller);
+    fields.setPropertyValue("treeNodeService", treeNodeService);
+    fields.setPropertyValue("userAuthenticationService", userAuthenticationService);
+    fields.setPropertyValue("objectMapper", objectMapper);
+    fields.setPropertyValue("contentCacheMaxBytes", 1024L * 1024);
+    controller.init();
+    mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+  }
+
+  @Test
+  public void testRangeOfContentIsPartialContent() throws Exception {
+    mockMvc
+        .perform(get("/tree/{nodeId}/content", NODE_ID).header(HttpHeaders.RANGE, "bytes=2-6"))
+        .andExpect(status().isPartialContent())
+        .andExpect(header().string(HttpHeaders.ETAG, E_TAG))
+        .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-6/" + content.length))
+        .andExpect(content().bytes(Arrays.copyOfRange(content, 2, 7)));
+  }
+
+  @Test
+  public void testRangeOfOtherVersionIsWholeContent() throws Exception {
+    mockMvc
+        .perform(
+            get("/tree/{nodeId}/content", NODE_ID)
+                .header(HttpHeaders.RANGE, "bytes=2-6")
+                .header(HttpHeaders.IF_RANGE, "\"other\""))
+        .andExpect(status().isOk())
+        .andExpect(content().bytes(content));
+  }
+
+  @Test
+  public void testUnchangedContentIsNotModified() throws Exception {
+    mockMvc
+        .perform(get("/tree/{nodeId}/content", NODE_ID).header(HttpHeaders.IF_NONE_MATCH, E_TAG))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"));
+  }
+}
@@ -30,6 +30,14 @@ interface SheetContent {
     variables: { [varId: string]: any };
 }
 
+// a tree node response as last received, kept to revalidate it with its entity tag
+interface CachedTreeNodeResponse {
+    eTag: string,
+    body: string,
+}
+
+const TREE_NODE_CACHE_SIZE = 200;
+
 
 export class ModelService {
     beModelHost: string = process.env.BACKEND_MODEL_HOST || "127.0.0.1";
@@ -40,27 +48,58 @@ export class ModelService {
         return this.getTreeNodes(authToken, nodeId, false).pipe(map(tns => tns[0]));
     }
 
+    // responses depend on the user, so they are cached per token and url
+    private treeNodeCache = new Map<string, CachedTreeNodeResponse>();
+
     private getTreeNodes(authToken: string, nodeId: string, withChildren: boolean): Observable<TreeNode[]> {
         const url = `${this.beModelProtocol}://${this.beModelHost}:${this.beModelPort}/tree/${nodeId}?sparse=false&sparseChildren=false&withChildren=${withChildren}`;
+        const cacheKey = `${authToken} ${url}`;
         return new Observable<TreeNode[]>(obs => {
+            const cached = this.treeNodeCache.get(cacheKey);
+            const headers: { [name: string]: string } = {
+                'Authorization': authToken,
+            };
+            if (cached) {
+                headers['If-None-Match'] = cached.eTag;
+            }
             const options = {
                 url: url,
-                headers: {
-                    'Authorization': authToken,
-                },
-                json: true
+                headers: headers,
+                json: true,
+                resolveWithFullResponse: true
             };
             requestPromise(options).then(res => {
-                let tnResponse = res as TreeNodeResponse;
+                const eTag = res.headers['etag'];
+                if (eTag) {
+                    this.cacheTreeNodeResponse(cacheKey, { eTag: eTag, body: JSON.stringify(res.body) });
+                }
+                let tnResponse = res.body as TreeNodeResponse;
                 let treeNodes = (tnResponse.data as TreeNode[]);
                 obs.next(treeNodes);
                 obs.complete();
             }).catch(err => {
-                obs.error(err);
+                if (cached && err.statusCode === 304) {
+                    // unchanged, parsed again as the callers modify the nodes they get
+                    this.cacheTreeNodeResponse(cacheKey, cached);
+                    let tnResponse = JSON.parse(cached.body) as TreeNodeResponse;
+                    obs.next(tnResponse.data as TreeNode[]);
+                    obs.complete();
+                } else {
+                    obs.error(err);
+                }
             });
         });
     }
 
+    private cacheTreeNodeResponse(cacheKey: string, response: CachedTreeNodeResponse) {
+        // maps keep their insertion order, so the first entry is the least recently used one
+        this.treeNodeCache.delete(cacheKey);
+        this.treeNodeCache.set(cacheKey, response);
+        if (this.treeNodeCache.size > TREE_NODE_CACHE_SIZE) {
+            this.treeNodeCache.delete(this.treeNodeCache.keys().next().value);
+        }
+    }
+
 
     private postTreeNode(authToken: string, node: TreeNode): Observable<TreeNode> {
         return new Observable<TreeNode>((obs: Observer<TreeNode>) => {